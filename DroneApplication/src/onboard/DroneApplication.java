@@ -24,19 +24,28 @@ package onboard;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedInputStream;
+import java.io.InputStream;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import org.mavlink.IMAVLinkCRC;
+import org.mavlink.IMAVLinkFrameListener;
+import org.mavlink.MAVLinkFrameParser;
 import org.mavlink.MAVLinkReader;
+import org.mavlink.MAVLinkStatistics;
+import org.mavlink.MAVLinkSubscription;
 import org.mavlink.messages.MAVLinkMessage;
 import org.mavlink.messages.ja4rtor.msg_ahrs2;
+import org.mavlink.messages.ja4rtor.msg_ahrs2View;
 import org.mavlink.messages.ja4rtor.msg_global_position_int;
 import org.mavlink.messages.ja4rtor.msg_heartbeat;
+import org.mavlink.messages.ja4rtor.msg_heartbeatView;
 import org.mavlink.messages.ja4rtor.msg_rc_channels_raw;
+import org.mavlink.messages.ja4rtor.msg_rc_channels_rawView;
 import jssc.SerialPortList;
 import network.Client;
 import serial.Reader;
+import serial.MessageScheduler;
 import serial.Sender;
 import serial.SerialPortCommunicator;
 
@@ -50,10 +59,14 @@ public class DroneApplication {
 	public Drone drone = new Drone(); //represents drone properties eg. yaw, roll, pitch
 	private String direction = "";
 	private Sender sender;
+	private MessageScheduler scheduler;
 	private String ipAddress = "169.254.110.196";
 	private boolean testMode = false;
 	private DroneController controller;
-	private boolean calibrated = false;
+	// written by the serial reader thread, read by the network thread
+	private volatile boolean calibrated = false;
+	// ids of the messages parsed in testAngle, other messages are skipped after their header
+	private final MAVLinkSubscription subscription = new MAVLinkSubscription();
 	private double xOffsetValue, yOffsetValue, altitude;
 	
     /**
@@ -83,6 +96,9 @@ public class DroneApplication {
     		System.err.println("No ports available");
     	}
 	
+    	// heartbeat at 1 Hz, whatever the commands sent
+    	scheduler = new MessageScheduler(sender);
+    	scheduler.startHeartbeat();
     	controller = new DroneController(sender);
 		ImageProcessing imageProcessing = new ImageProcessing(drone, this);
 		
@@ -145,8 +161,9 @@ public class DroneApplication {
 				imageProcessing.setBigPattern(arr[1].equals("big"));
 			} else if (data.toString().equals("calibrate")) {
 				// calibrates drone based on current PPM positions of RC controller
-        		sender.send(3);
 				calibrated = false;
+				subscription.subscribe(msg_rc_channels_raw.MAVLINK_MSG_ID_RC_CHANNELS_RAW);
+        		sender.send(3);
 			} else if (data.toString().equals("snapshot")) {
 				// deals with taking a snapshot of what the drone sees
 				imageProcessing.snapshot();
@@ -195,7 +212,6 @@ public class DroneApplication {
 				} else if (cmd.equals("hb")) {
 					testHeartBeat(sender);
 				} else if (cmd.equals("mode")) {
-					sender.heartbeat();
 					sender.mode(args.length > 1 ? args[1] : "", args.length > 2 && args[2].equals("armed"));
 				} else if (cmd.equals("land")) {
 					land(sender, args[1]);
@@ -218,7 +234,6 @@ public class DroneApplication {
      * @param armed whether drone should be armed or not
      */
     public void changeMode(String mode, boolean armed) {
-    	sender.heartbeat();
 		sender.mode(mode, armed);
 	}
 
@@ -231,7 +246,6 @@ public class DroneApplication {
 			public void run() {
 				System.out.println("test mode activated!!!");
 				while (testMode) {
-					sender.heartbeat();		
 					controller.control(xOffsetValue, yOffsetValue, altitude, drone.currentCustomMode);
 				}
 				System.out.println("test mode deactivated");
@@ -245,9 +259,6 @@ public class DroneApplication {
 	 */
     private void land(Sender sender, String degreesString) {
     	while (true) {
-			if(sender.heartbeat()) {
-	    		System.out.println("Successfully sent heartbeat");
-	    	}
 			sender.land(Float.parseFloat(degreesString), 0);
 			try {
 				Thread.sleep(1000);
@@ -269,9 +280,6 @@ public class DroneApplication {
 	 */
     private void testCommands(Sender sender, int x, int y, int z) {
 		while (true) {
-			if(sender.heartbeat()) {
-	    		System.out.println("Successfully set heartbeat");
-	    	}
 			if (sender.command(x, y, z)) {
 				System.out.println("sent manual move message");
 			}
@@ -284,7 +292,7 @@ public class DroneApplication {
     /**
      * Receive angle/orientation messages from the drone
      */
-    private void testAngle(Sender sender, SerialPortCommunicator spc) {
+    private void testAngle(final Sender sender, SerialPortCommunicator spc) {
     	sender.send(0); //stops all streams
     	sender.send(3); //rc raw values
 		sender.send(6); // barometer for altitude
@@ -295,48 +303,72 @@ public class DroneApplication {
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
-        MAVLinkReader reader;
-        int nb = 0;
-    	Reader rdr = new Reader(spc);
-    	PipedInputStream in = rdr.read();
-        DataInputStream dis = new DataInputStream(in);
-        reader = new MAVLinkReader(dis);
-        try {
-            while (true) {
-                MAVLinkMessage msg = reader.getNextMessage();
-                if (msg != null && msg.messageType == msg_ahrs2.MAVLINK_MSG_ID_AHRS2) {
-                    nb++;
-                    drone.pitch = ((msg_ahrs2)msg).pitch;
-                    drone.yaw = ((msg_ahrs2)msg).yaw;
-                    drone.roll = -((msg_ahrs2)msg).roll;
-                } else if (msg != null && msg.messageType == msg_heartbeat.MAVLINK_MSG_ID_HEARTBEAT) {
-                	nb++;
-                	drone.currentMode = ((msg_heartbeat)msg).base_mode;
-                	drone.currentCustomMode = ((msg_heartbeat)msg).custom_mode;
-                } else if (!calibrated && msg != null && msg.messageType == msg_rc_channels_raw.MAVLINK_MSG_ID_RC_CHANNELS_RAW) {
-            		nb++;
-            		controller.setChannels(((msg_rc_channels_raw)msg).chan1_raw,
-            				((msg_rc_channels_raw)msg).chan2_raw,
-            				((msg_rc_channels_raw)msg).chan3_raw,
-            				((msg_rc_channels_raw)msg).chan4_raw);
-            		sender.send(-3);
-            		calibrated = true;
+        // fields are read in place in the received frames, no message is decoded
+        final msg_ahrs2View ahrs2 = new msg_ahrs2View();
+        final msg_heartbeatView heartbeat = new msg_heartbeatView();
+        final msg_rc_channels_rawView rcChannels = new msg_rc_channels_rawView();
+        subscription.subscribe(msg_ahrs2.MAVLINK_MSG_ID_AHRS2);
+        subscription.subscribe(msg_heartbeat.MAVLINK_MSG_ID_HEARTBEAT);
+        if (!calibrated) {
+            subscription.subscribe(msg_rc_channels_raw.MAVLINK_MSG_ID_RC_CHANNELS_RAW);
+        }
+        MAVLinkFrameParser parser = new MAVLinkFrameParser(IMAVLinkCRC.MAVLINK_MESSAGE_CRCS, new IMAVLinkFrameListener() {
+            public void onFrame(byte[] buffer, int offset, int length) {
+                int msgid = MAVLinkFrameParser.getMessageId(buffer, offset);
+                if (msgid == msg_ahrs2.MAVLINK_MSG_ID_AHRS2) {
+                    ahrs2.wrap(buffer, offset);
+                    drone.pitch = ahrs2.getPitch();
+                    drone.yaw = ahrs2.getYaw();
+                    drone.roll = -ahrs2.getRoll();
+                } else if (msgid == msg_heartbeat.MAVLINK_MSG_ID_HEARTBEAT) {
+                    heartbeat.wrap(buffer, offset);
+                    drone.currentMode = heartbeat.getBase_mode();
+                    drone.currentCustomMode = heartbeat.getCustom_mode();
+                } else if (msgid == msg_rc_channels_raw.MAVLINK_MSG_ID_RC_CHANNELS_RAW) {
+                    rcChannels.wrap(buffer, offset);
+                    controller.setChannels(rcChannels.getChan1_raw(), rcChannels.getChan2_raw(),
+                                           rcChannels.getChan3_raw(), rcChannels.getChan4_raw());
+                    sender.send(-3);
+                    calibrated = true;
+                    subscription.unsubscribe(msg_rc_channels_raw.MAVLINK_MSG_ID_RC_CHANNELS_RAW);
                 }
             }
-        } catch (IOException e) {
-        	e.printStackTrace();
+        });
+        parser.setSubscription(subscription);
+        // rates by message and by stream, printed while messages are read
+        final MAVLinkStatistics statistics = new MAVLinkStatistics();
+        parser.setStatistics(statistics);
+        Timer statisticsTimer = new Timer("statistics", true);
+        statisticsTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                System.out.print(statistics.report());
+                System.out.print(sender.getQueue().report());
+            }
+        }, 10000, 10000);
+        // each chunk received from the serial port is parsed as soon as it is received
+        Reader rdr = new Reader(spc);
+        byte[] data = new byte[4096];
+        try {
+            int n;
+            while ((n = rdr.read(data, 0, data.length)) >= 0) {
+                // frames are timed by the serial event which received them, not by the parsing
+                parser.feed(data, 0, n, rdr.getLastArrival());
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
 
-        System.out.println("TOTAL BYTES = " + reader.getTotalBytesReceived());
-        System.out.println("NBMSG (" + nb + ") : " + reader.getNbMessagesReceived() + " NBCRC=" + reader.getBadCRC() + " NBSEQ="
-                          + reader.getBadSequence() + " NBLOST=" + reader.getLostBytes());
+        statisticsTimer.cancel();
+        System.out.println("TOTAL BYTES = " + parser.getTotalBytesReceived());
+        System.out.println("NBMSG : " + parser.getNbMessagesReceived() + " NBSKIPPED=" + parser.getNbMessagesSkipped() + " NBCRC=" + parser.getBadCRC() + " NBLOST=" + parser.getLostBytes()
+                           + " OVERRUNS=" + rdr.getOverruns());
 	}
 
     /**
      * Arm and disarm the drone
      */
 	public void testArm(Sender sender, boolean arm) {
-		sender.heartbeat();
     	if(sender.arm(arm)) {
     		System.out.println("Successfully set ARMED to: " + arm);
     	}
@@ -358,7 +390,7 @@ public class DroneApplication {
         MAVLinkReader reader;
         int nb = 0;
     	Reader rdr = new Reader(spc);
-    	PipedInputStream in = rdr.read();
+    	InputStream in = rdr.read();
         DataInputStream dis = new DataInputStream(in);
         reader = new MAVLinkReader(dis);
         try {
@@ -9,8 +9,10 @@ import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.imgproc.Moments;
 import org.opencv.videoio.VideoCapture;
+import org.mavlink.messages.ja4rtor.msg_heartbeat;
 
 import network.Client;
+import serial.DeltaFilter;
 
 /**
  * Created by Wesley on 24/04/2016.
@@ -36,6 +38,10 @@ public class ImageProcessing {
 	private int snapshotCounter = 0;
 	private double previousX, previousY;
 	private double altitude = -1;
+	// mode is sent again when it did not change after this delay, as a keyframe for the ground station
+	private static final long MODE_KEYFRAME_MS = 1000;
+	private final msg_heartbeat mode = new msg_heartbeat();
+	private final DeltaFilter<msg_heartbeat> modeFilter = new DeltaFilter<>(new msg_heartbeat(), msg_heartbeat::diffMask, msg_heartbeat::copyFrom, MODE_KEYFRAME_MS);
 	
 	public ImageProcessing(Drone drone, DroneApplication app) {
 		this.drone = drone;
@@ -295,10 +301,15 @@ public class ImageProcessing {
 					failure(e);
 				}
 	        }
-			try {
-				client.send("mode:" + drone.currentMode + ":" + drone.currentCustomMode);
-			} catch (Exception e) {
-				failure(e);
+			mode.base_mode = (int) drone.currentMode;
+			mode.custom_mode = (long) drone.currentCustomMode;
+			if (modeFilter.offer(mode, System.currentTimeMillis())) {
+				try {
+					client.send("mode:" + drone.currentMode + ":" + drone.currentCustomMode);
+				} catch (Exception e) {
+					modeFilter.reset();
+					failure(e);
+				}
 			}
 	    }
 	    System.out.println("finished");
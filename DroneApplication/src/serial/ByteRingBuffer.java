@@ -0,0 +1,157 @@
+package serial;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed size lock-free ring of bytes between one producer, the serial port event thread, and one consumer.
+ * The producer never blocks : bytes which don't fit are dropped and counted as overruns.
+ * The consumer is parked only while the ring is empty and is unparked by the next write.
+ */
+public class ByteRingBuffer {
+	private final byte[] ring;
+	private final int mask;
+	/**
+	 * Total number of bytes written, only changed by the producer
+	 */
+	private volatile long head = 0;
+	/**
+	 * Total number of bytes read, only changed by the consumer
+	 */
+	private volatile long tail = 0;
+	/**
+	 * Consumer parked on an empty ring, null if none
+	 */
+	private volatile Thread waiter = null;
+	private volatile boolean closed = false;
+	private volatile long overruns = 0;
+	/**
+	 * System.nanoTime() of the last write
+	 */
+	private volatile long lastWrite = 0;
+
+	/**
+	 * @param capacity size of the ring, rounded up to a power of 2
+	 */
+	public ByteRingBuffer(int capacity) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		ring = new byte[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Write bytes received, called by the producer only
+	 * @return number of bytes written, less than length if the ring is full
+	 */
+	public int write(byte[] data, int offset, int length) {
+		lastWrite = System.nanoTime();
+		long h = head;
+		int n = (int) Math.min(length, ring.length - (h - tail));
+		int index = (int) (h & mask);
+		int first = Math.min(n, ring.length - index);
+		System.arraycopy(data, offset, ring, index, first);
+		System.arraycopy(data, offset + first, ring, 0, n - first);
+		// publish the bytes before waking the consumer
+		head = h + n;
+		if (n < length) {
+			overruns += length - n;
+		}
+		Thread t = waiter;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+		return n;
+	}
+
+	/**
+	 * Read available bytes, called by the consumer only.
+	 * Waits while the ring is empty.
+	 * @return number of bytes read, -1 if the ring is closed and empty
+	 */
+	public int read(byte[] data, int offset, int length) throws InterruptedException {
+		return read(data, offset, length, 0);
+	}
+
+	/**
+	 * Read available bytes, called by the consumer only.
+	 * Waits while the ring is empty, at most timeout milliseconds if timeout is positive.
+	 * @return number of bytes read, 0 on timeout, -1 if the ring is closed and empty
+	 */
+	public int read(byte[] data, int offset, int length, long timeout) throws InterruptedException {
+		long t = tail;
+		long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+		while (head == t) {
+			if (closed) {
+				if (head == t) {
+					return -1;
+				}
+				break;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			waiter = Thread.currentThread();
+			// check again after registering, a write may have been published in between
+			if (head == t && !closed) {
+				if (timeout > 0) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						waiter = null;
+						return 0;
+					}
+					LockSupport.parkNanos(this, remaining);
+				} else {
+					LockSupport.park(this);
+				}
+			}
+			waiter = null;
+		}
+		int n = (int) Math.min(length, head - t);
+		int index = (int) (t & mask);
+		int first = Math.min(n, ring.length - index);
+		System.arraycopy(ring, index, data, offset, first);
+		System.arraycopy(ring, 0, data, offset + first, n - first);
+		tail = t + n;
+		return n;
+	}
+
+	/**
+	 * Wake up the consumer, which reads the remaining bytes then gets -1
+	 */
+	public void close() {
+		closed = true;
+		Thread t = waiter;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+
+	/**
+	 * @return number of bytes waiting to be read
+	 */
+	public int available() {
+		return (int) (head - tail);
+	}
+
+	/**
+	 * @return number of bytes dropped because the ring was full
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * @return System.nanoTime() when the last bytes were written, the time of reception of the bytes just read
+	 * unless the producer wrote again meanwhile
+	 */
+	public long getLastWrite() {
+		return lastWrite;
+	}
+
+	public int capacity() {
+		return ring.length;
+	}
+}
@@ -0,0 +1,66 @@
+package serial;
+
+import java.util.function.BiConsumer;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Let a message through only when one of its fields changed since the last message let through,
+ * or when the keyframe delay expired so that a receiver that missed a message catches up.
+ * Built on the generated diffMask and copyFrom, so filtering allocates nothing:
+ * <pre>
+ * DeltaFilter&lt;msg_heartbeat&gt; filter = new DeltaFilter&lt;&gt;(new msg_heartbeat(), msg_heartbeat::diffMask, msg_heartbeat::copyFrom, 1000);
+ * </pre>
+ * A filter is used by one thread.
+ */
+public class DeltaFilter<T> {
+	private final T last;
+	private final ToLongBiFunction<T, T> diffMask;
+	private final BiConsumer<T, T> copyFrom;
+	private final long keyframeMillis;
+	private long lastTime;
+	private boolean empty = true;
+	private long changed;
+
+	/**
+	 * @param last message holding the last values let through, owned by the filter
+	 * @param diffMask generated diffMask of the message class
+	 * @param copyFrom generated copyFrom of the message class
+	 * @param keyframeMillis delay after which an unchanged message is let through again
+	 */
+	public DeltaFilter(T last, ToLongBiFunction<T, T> diffMask, BiConsumer<T, T> copyFrom, long keyframeMillis) {
+		this.last = last;
+		this.diffMask = diffMask;
+		this.copyFrom = copyFrom;
+		this.keyframeMillis = keyframeMillis;
+	}
+
+	/**
+	 * @param msg message to send, not kept by the filter
+	 * @param now current time in milliseconds
+	 * @return true if msg must be sent, its values are then the last ones let through
+	 */
+	public boolean offer(T msg, long now) {
+		changed = empty ? -1L : diffMask.applyAsLong(msg, last);
+		if (changed == 0 && now - lastTime < keyframeMillis) {
+			return false;
+		}
+		copyFrom.accept(last, msg);
+		lastTime = now;
+		empty = false;
+		return true;
+	}
+
+	/**
+	 * @return fields changed by the last offer, as returned by diffMask, all bits set for the first message
+	 */
+	public long getChanged() {
+		return changed;
+	}
+
+	/**
+	 * Let the next message through whatever its values
+	 */
+	public void reset() {
+		empty = true;
+	}
+}
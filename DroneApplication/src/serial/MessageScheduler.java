@@ -0,0 +1,76 @@
+package serial;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send the heartbeat and other periodic messages from one timer thread, at fixed rates whatever the control loop does.
+ * Messages only go in the outbound queue of the sender, so the timer thread never waits for the serial port.
+ */
+public class MessageScheduler {
+	public static final long HEARTBEAT_PERIOD_MS = 1000;
+	private final Sender sender;
+	private final ScheduledExecutorService timer;
+	private ScheduledFuture<?> heartbeat = null;
+
+	public MessageScheduler(Sender sender) {
+		this.sender = sender;
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "message scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Send the heartbeat at 1 Hz, starting now
+	 */
+	public synchronized void startHeartbeat() {
+		if (heartbeat == null) {
+			heartbeat = every(HEARTBEAT_PERIOD_MS, new Runnable() {
+				public void run() {
+					sender.heartbeat();
+				}
+			});
+		}
+	}
+
+	public synchronized void stopHeartbeat() {
+		if (heartbeat != null) {
+			heartbeat.cancel(false);
+			heartbeat = null;
+		}
+	}
+
+	/**
+	 * Send a message periodically at a fixed rate, starting now
+	 * @param periodMillis period in milliseconds
+	 * @param send sends the message with the sender, must not block
+	 * @return future to cancel the message
+	 */
+	public ScheduledFuture<?> every(long periodMillis, final Runnable send) {
+		return timer.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					send.run();
+				} catch (RuntimeException e) {
+					// an exception would cancel the periodic message
+					e.printStackTrace();
+				}
+			}
+		}, 0, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop all periodic messages
+	 */
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+
+}
@@ -0,0 +1,359 @@
+package serial;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mavlink.IMAVLinkMessage;
+import org.mavlink.MAVLinkCRC;
+
+/**
+ * Frames waiting to be written on the serial port by a single writer thread.
+ * Frames are written by priority lane : HIGH first, BULK last. In a lane, queued frames are written before latest-wins slots.
+ * A latest-wins slot keeps only the last frame of an idempotent stream : a new frame replaces the one not written yet,
+ * and written or replaced frames of a slot are given back to the next producer of the slot.
+ * Written frames of lanes are kept by length and given back to the next producer of a frame of the same length.
+ * Producers never lock : lanes are ConcurrentLinkedQueue and slots AtomicReferenceArray.
+ * The writer gathers the frames queued within a short window in one buffer written by a single call to the port,
+ * so frames sent together cost one syscall and one UART transaction. The port only writes whole arrays : a batch is copied
+ * in an array of its exact length, kept by the writer thread for the next batch of the same length. A batch is written when the window ends,
+ * when the next frame does not fit, or at the deadline of its first high priority frame, whichever comes first.
+ * Lanes and slots reorder frames and slots drop replaced ones, so the writer numbers the frames in the order they are written :
+ * the sequence byte is set and the CRC computed again when a frame goes in the batch. Signed frames keep their sequence.
+ */
+public class OutboundQueue {
+	/**
+	 * Safety commands and heartbeat
+	 */
+	public static final int HIGH = 0;
+	/**
+	 * Control commands
+	 */
+	public static final int NORMAL = 1;
+	/**
+	 * Requests which can wait
+	 */
+	public static final int BULK = 2;
+	private static final int LANES = 3;
+	/**
+	 * Biggest MAVLink frame
+	 */
+	private static final int MAX_FRAME_LEN = 280;
+	public static final long DEFAULT_WINDOW_MICROS = 1000;
+	public static final long DEFAULT_HIGH_DEADLINE_MICROS = 200;
+	public static final int DEFAULT_BATCH_BYTES = 512;
+	private final SerialPortCommunicator spc;
+	/**
+	 * Extra crc indexed by message id, to compute the CRC of numbered frames
+	 */
+	private final char[] crcs;
+	/**
+	 * Sequence of the next frame written, only used by the writer thread
+	 */
+	private int sequence = 0;
+	private final ConcurrentLinkedQueue<byte[]> high = new ConcurrentLinkedQueue<byte[]>();
+	private final ConcurrentLinkedQueue<byte[]> normal = new ConcurrentLinkedQueue<byte[]>();
+	private final ConcurrentLinkedQueue<byte[]> bulk = new ConcurrentLinkedQueue<byte[]>();
+	/**
+	 * Lane of each slot
+	 */
+	private final int[] slotLanes;
+	private final AtomicReferenceArray<byte[]> slots;
+	/**
+	 * Written frame of each slot, reused by the next frame of the same length
+	 */
+	private final AtomicReferenceArray<byte[]> spares;
+	/**
+	 * Written frame of lanes by length, reused by the next queued frame of the same length
+	 */
+	private final AtomicReferenceArray<byte[]> laneSpares = new AtomicReferenceArray<byte[]>(MAX_FRAME_LEN + 1);
+	private final Thread writer;
+	private volatile boolean running = true;
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong replaced = new AtomicLong();
+	private final long windowNanos;
+	private final long highDeadlineNanos;
+	/**
+	 * Frames of the current batch, only used by the writer thread
+	 */
+	private final byte[] batch;
+	/**
+	 * Array of each batch length, created on the first batch of this length, only used by the writer thread
+	 */
+	private final byte[][] exact;
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong delayNanos = new AtomicLong();
+	private volatile long maxDelayNanos = 0;
+	/**
+	 * Lane and slot, -1 for a queued frame, of the last frame polled by the writer thread
+	 */
+	private int polledLane;
+	private int polledSlot;
+
+	/**
+	 * Start the writer thread with a 1 ms window, 512 bytes batches and a 200 us deadline for high priority frames
+	 * @param spc serial port
+	 * @param crcs extra crc indexed by message id, IMAVLinkCRC.MAVLINK_MESSAGE_CRCS
+	 * @param slotLanes lane of each latest-wins slot
+	 */
+	public OutboundQueue(SerialPortCommunicator spc, char[] crcs, int[] slotLanes) {
+		this(spc, crcs, slotLanes, DEFAULT_WINDOW_MICROS, DEFAULT_BATCH_BYTES, DEFAULT_HIGH_DEADLINE_MICROS);
+	}
+
+	/**
+	 * Start the writer thread
+	 * @param spc serial port
+	 * @param crcs extra crc indexed by message id, IMAVLinkCRC.MAVLINK_MESSAGE_CRCS
+	 * @param slotLanes lane of each latest-wins slot
+	 * @param windowMicros longest wait for more frames after the first frame of a batch, 0 writes only the frames already queued together
+	 * @param batchBytes size of a batch, a larger frame is written alone
+	 * @param highDeadlineMicros longest wait after a high priority frame, never more than the window
+	 */
+	public OutboundQueue(SerialPortCommunicator spc, char[] crcs, int[] slotLanes, long windowMicros, int batchBytes, long highDeadlineMicros) {
+		this.spc = spc;
+		this.crcs = crcs;
+		windowNanos = windowMicros * 1000;
+		highDeadlineNanos = highDeadlineMicros * 1000;
+		batch = new byte[batchBytes];
+		exact = new byte[batchBytes + 1][];
+		this.slotLanes = slotLanes.clone();
+		slots = new AtomicReferenceArray<byte[]>(slotLanes.length);
+		spares = new AtomicReferenceArray<byte[]>(slotLanes.length);
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "serial writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queue a frame, written after the frames already queued in its lane
+	 */
+	public void offer(int lane, byte[] frame) {
+		queue(lane).offer(frame);
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * @return a frame array to fill and queue in a lane, reused if a written frame of a lane has the same length
+	 */
+	public byte[] obtain(int length) {
+		byte[] frame = length <= MAX_FRAME_LEN ? laneSpares.getAndSet(length, null) : null;
+		return frame != null ? frame : new byte[length];
+	}
+
+	/**
+	 * @return a frame array of a slot to fill, reused if a written frame has the same length
+	 */
+	public byte[] obtain(int slot, int length) {
+		byte[] frame = spares.getAndSet(slot, null);
+		return frame != null && frame.length == length ? frame : new byte[length];
+	}
+
+	/**
+	 * Replace the frame of a slot. The previous frame is dropped if it was not written yet.
+	 */
+	public void offerLatest(int slot, byte[] frame) {
+		byte[] old = slots.getAndSet(slot, frame);
+		if (old != null) {
+			replaced.incrementAndGet();
+			spares.compareAndSet(slot, null, old);
+		}
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Stop the writer thread, frames not written yet are dropped
+	 */
+	public void close() {
+		running = false;
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * @return number of frames written
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * @return number of slot frames replaced by a newer one before being written
+	 */
+	public long getReplaced() {
+		return replaced.get();
+	}
+
+	/**
+	 * @return number of writes to the port
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * @return number of writes to the port saved by batching frames
+	 */
+	public long getSyscallsSaved() {
+		return written.get() - batches.get();
+	}
+
+	/**
+	 * @return mean time waited by a frame in its batch, in microseconds
+	 */
+	public double getMeanAddedLatencyMicros() {
+		long frames = written.get();
+		return frames == 0 ? 0 : delayNanos.get() / 1000.0 / frames;
+	}
+
+	/**
+	 * @return longest time waited by a frame in its batch, in microseconds
+	 */
+	public double getMaxAddedLatencyMicros() {
+		return maxDelayNanos / 1000.0;
+	}
+
+	public String report() {
+		return String.format("serial writer : %d frames in %d writes, %d syscalls saved, added latency mean %.1f us max %.1f us, %d replaced%n",
+				written.get(), batches.get(), getSyscallsSaved(), getMeanAddedLatencyMicros(), getMaxAddedLatencyMicros(), replaced.get());
+	}
+
+	private ConcurrentLinkedQueue<byte[]> queue(int lane) {
+		return lane == HIGH ? high : lane == NORMAL ? normal : bulk;
+	}
+
+	/**
+	 * Writer loop : gather frames by priority in the batch, write it when its deadline is reached or it is full,
+	 * park when there is nothing to write
+	 */
+	private void write() {
+		byte[] frame = null;
+		int size = 0;
+		int frames = 0;
+		long first = 0;
+		long appended = 0;
+		long deadline = 0;
+		while (running) {
+			if (frame == null) {
+				frame = poll();
+			}
+			long now = System.nanoTime();
+			if (frame != null && size + frame.length <= batch.length) {
+				// frames already queued at the deadline still go in the batch while they fit
+				if (size == 0) {
+					first = now;
+					deadline = now + windowNanos;
+				}
+				if (polledLane == HIGH) {
+					deadline = Math.min(deadline, now + highDeadlineNanos);
+				}
+				System.arraycopy(frame, 0, batch, size, frame.length);
+				number(batch, size);
+				size += frame.length;
+				frames++;
+				appended += now - first;
+				release(frame);
+				frame = null;
+				if (size < batch.length) {
+					continue;
+				}
+			} else if (size == 0) {
+				if (frame != null) {
+					// larger than a batch
+					number(frame, 0);
+					spc.writeData(frame);
+					written.incrementAndGet();
+					batches.incrementAndGet();
+					release(frame);
+					frame = null;
+				} else {
+					// a frame offered since the search has given a permit : park returns at once
+					LockSupport.park(this);
+				}
+				continue;
+			} else if (frame == null && now < deadline) {
+				LockSupport.parkNanos(this, deadline - now);
+				continue;
+			}
+			byte[] out = exact[size];
+			if (out == null) {
+				out = new byte[size];
+				exact[size] = out;
+			}
+			System.arraycopy(batch, 0, out, 0, size);
+			spc.writeData(out);
+			long delay = now - first;
+			// each frame waited from its append to the write
+			delayNanos.addAndGet(frames * delay - appended);
+			if (delay > maxDelayNanos) {
+				maxDelayNanos = delay;
+			}
+			written.addAndGet(frames);
+			batches.incrementAndGet();
+			size = 0;
+			frames = 0;
+			appended = 0;
+		}
+	}
+
+	/**
+	 * Set the next sequence in a frame and compute its CRC again, called by the writer thread only
+	 * @param frame frame array
+	 * @param offset position of the frame
+	 */
+	private void number(byte[] frame, int offset) {
+		boolean v2 = frame[offset] == IMAVLinkMessage.MAVPROT_PACKET_START_V20;
+		int len = frame[offset + 1] & 0x00FF;
+		int msgid = v2 ? (frame[offset + 7] & 0x00FF) | (frame[offset + 8] & 0x00FF) << 8 | (frame[offset + 9] & 0x00FF) << 16 : frame[offset + 5] & 0x00FF;
+		if ((v2 && (frame[offset + 2] & IMAVLinkMessage.MAVLINK_IFLAG_SIGNED) != 0) || msgid >= crcs.length) {
+			// the signature covers the sequence, an unknown message can't be sealed again
+			return;
+		}
+		int headerLen = v2 ? 10 : 6;
+		frame[offset + (v2 ? 4 : 2)] = (byte) sequence;
+		sequence = (sequence + 1) & 0x00FF;
+		int crc = MAVLinkCRC.crc_accumulate(frame, offset + 1, headerLen - 1 + len, MAVLinkCRC.crc_init());
+		crc = MAVLinkCRC.crc_accumulate((byte) crcs[msgid], crc);
+		frame[offset + headerLen + len] = (byte) crc;
+		frame[offset + headerLen + len + 1] = (byte) (crc >> 8);
+	}
+
+	/**
+	 * Give a frame back to the next producer of its slot or of its length once it is copied in the batch or written
+	 */
+	private void release(byte[] frame) {
+		if (polledSlot >= 0) {
+			spares.set(polledSlot, frame);
+		} else if (frame.length <= MAX_FRAME_LEN) {
+			laneSpares.compareAndSet(frame.length, null, frame);
+		}
+	}
+
+	/**
+	 * @return the frame of highest priority, null if there is none. Its lane and slot are kept in polledLane and polledSlot.
+	 */
+	private byte[] poll() {
+		for (int lane = 0; lane < LANES; lane++) {
+			polledLane = lane;
+			polledSlot = -1;
+			byte[] frame = queue(lane).poll();
+			if (frame != null) {
+				return frame;
+			}
+			for (int slot = 0; slot < slotLanes.length; slot++) {
+				if (slotLanes[slot] == lane) {
+					frame = slots.getAndSet(slot, null);
+					if (frame != null) {
+						polledSlot = slot;
+						return frame;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+}
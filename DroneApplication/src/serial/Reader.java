@@ -1,48 +1,80 @@
 package serial;
 
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-
-import jssc.SerialPortList;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 
 /**
- * This class allows raspberry pi to receive data from HKPilot
+ * This class allows raspberry pi to receive data from HKPilot.
+ * Bytes are pushed by the serial port events into a ring buffer, no thread polls the port :
+ * readers wait only while no byte is received.
  */
 public class Reader {
-	private SerialPortCommunicator spc;
-	private PipedInputStream in = new PipedInputStream();
-	private PipedOutputStream out;
-	
+	public static final int RING_SIZE = 64 * 1024;
+	private final ByteRingBuffer ring = new ByteRingBuffer(RING_SIZE);
+
 	public Reader(SerialPortCommunicator spc){
-		this.spc = spc;
-		try {
-			out = new PipedOutputStream(in);
-		} catch (IOException e) {
-			out = null;
-			e.printStackTrace();
+		if (!spc.addDataListener(ring)) {
+			System.out.println("cannot listen to serial port");
 		}
 	}
 
-	public PipedInputStream read() {
-		Thread thread = new Thread(new Runnable(){
-			public void run() {
-				while (true){
-					byte[] data = spc.readData();
-					try {
-						if (data != null) {
-							out.write(data);
-						}
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
+	/**
+	 * Wait for received bytes
+	 * @return number of bytes read, -1 if the reader is closed
+	 */
+	public int read(byte[] data, int offset, int length) throws InterruptedException {
+		return ring.read(data, offset, length);
+	}
+
+	/**
+	 * @return a stream reading the received bytes
+	 */
+	public InputStream read() {
+		return new InputStream() {
+			private final byte[] one = new byte[1];
+
+			@Override
+			public int read() throws IOException {
+				return read(one, 0, 1) < 0 ? -1 : one[0] & 0x00FF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0) {
+					return 0;
+				}
+				try {
+					return ring.read(b, off, len);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
 				}
 			}
-		});
 
-		thread.setDaemon(false);
-		thread.start();
-		return in;
+			@Override
+			public int available() {
+				return ring.available();
+			}
+		};
+	}
+
+	public void close() {
+		ring.close();
+	}
+
+	/**
+	 * @return System.nanoTime() in the serial event of the last bytes received
+	 */
+	public long getLastArrival() {
+		return ring.getLastWrite();
+	}
+
+	/**
+	 * @return number of bytes lost because they were not read in time
+	 */
+	public long getOverruns() {
+		return ring.getOverruns();
 	}
-	
+
 }
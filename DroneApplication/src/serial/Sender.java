@@ -1,7 +1,11 @@
 package serial;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+import org.mavlink.IMAVLinkCRC;
+import org.mavlink.messages.MAVLinkMessage;
 import org.mavlink.messages.MAV_AUTOPILOT;
 import org.mavlink.messages.MAV_CMD;
 import org.mavlink.messages.MAV_COMPONENT;
@@ -9,11 +13,9 @@ import org.mavlink.messages.MAV_FRAME;
 import org.mavlink.messages.MAV_MODE;
 import org.mavlink.messages.MAV_MODE_FLAG;
 import org.mavlink.messages.MAV_STATE;
-import org.mavlink.messages.ja4rtor.msg_command_int;
 import org.mavlink.messages.ja4rtor.msg_command_long;
 import org.mavlink.messages.ja4rtor.msg_heartbeat;
 import org.mavlink.messages.ja4rtor.msg_landing_target;
-import org.mavlink.messages.ja4rtor.msg_manual_control;
 import org.mavlink.messages.ja4rtor.msg_rc_channels_override;
 import org.mavlink.messages.ja4rtor.msg_request_data_stream;
 import org.mavlink.messages.ja4rtor.msg_set_mode;
@@ -21,21 +23,133 @@ import org.mavlink.messages.ja4rtor.msg_set_position_target_local_ned;
 
 
 /**
- * This class allows raspberry pi to send data to HKPilot
+ * This class allows raspberry pi to send data to HKPilot.
+ * Messages are filled in templates of the calling thread and encoded in frames queued for the writer thread of an
+ * OutboundQueue : safety commands and heartbeat first, control commands, then stream requests.
+ * Frames sent together are written to the port in one batch.
+ * Idempotent streams (heartbeat, RC override, position target, landing target) use latest-wins slots,
+ * so a stale frame never waits behind a newer one. Written frames are reused by the next frame of the same slot or length :
+ * sending in a slot allocates nothing once the slot has been written, frames of the other lanes still allocate a queue node.
+ * Sequence numbers are set by the writer thread in the order frames are written. Logging is optional, messages are printed by a background thread.
  */
 public class Sender {
-	private SerialPortCommunicator spc;
-	private int sequence = 0;
+	/**
+	 * Biggest MAVLink frame
+	 */
+	private static final int MAX_FRAME_LEN = 280;
+	private static final int SLOT_HEARTBEAT = 0;
+	private static final int SLOT_RC_OVERRIDE = 1;
+	private static final int SLOT_POSITION_TARGET = 2;
+	private static final int SLOT_LANDING_TARGET = 3;
+	/**
+	 * Message templates and encoding buffer of a thread
+	 */
+	private static final class Templates {
+		final ByteBuffer buffer = ByteBuffer.allocate(MAX_FRAME_LEN);
+		final msg_request_data_stream dataStream = new msg_request_data_stream(255, 1);
+		final msg_set_position_target_local_ned positionTarget = new msg_set_position_target_local_ned(255, 1);
+		final msg_rc_channels_override rcOverride = new msg_rc_channels_override(255, 1);
+		final msg_landing_target landingTarget = new msg_landing_target(255, 1);
+		final msg_command_long commandLong = new msg_command_long(255, 1);
+		final msg_heartbeat heartbeat = new msg_heartbeat(255, 1);
+		final msg_set_mode setMode = new msg_set_mode(255, 1);
+	}
+	private final ThreadLocal<Templates> templates = new ThreadLocal<Templates>() {
+		@Override
+		protected Templates initialValue() {
+			return new Templates();
+		}
+	};
+	private final OutboundQueue queue;
 	private long startTime;
+	private volatile BlockingQueue<String> log = null;
+	private Thread printer = null;
 	
 	public Sender(SerialPortCommunicator spc){
-		this.spc = spc;
+		queue = new OutboundQueue(spc, IMAVLinkCRC.MAVLINK_MESSAGE_CRCS, new int[] { OutboundQueue.HIGH, OutboundQueue.NORMAL, OutboundQueue.NORMAL, OutboundQueue.NORMAL });
 		startTime = System.currentTimeMillis();
 	}
 
+	/**
+	 * Print sent messages in a background thread. Messages are dropped if the console is too slow.
+	 * The thread ends when logging is turned off.
+	 */
+	public synchronized void setLogging(boolean logging) {
+		if (logging && log == null) {
+			final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(256);
+			printer = new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (true) {
+							System.out.println(queue.take());
+						}
+					} catch (InterruptedException e) {
+						// end of logging
+					}
+				}
+			}, "sender log");
+			printer.setDaemon(true);
+			printer.start();
+			log = queue;
+		} else if (!logging && log != null) {
+			log = null;
+			printer.interrupt();
+			printer = null;
+		}
+	}
+
+	private void log(String text) {
+		BlockingQueue<String> queue = log;
+		if (queue != null) {
+			queue.offer(text);
+		}
+	}
+
+	/**
+	 * Encode a template in the buffer of the thread, its sequence is set by the writer thread
+	 * @return length of the frame
+	 */
+	private int encode(Templates t, MAVLinkMessage msg) {
+		t.buffer.clear();
+		int n = msg.encodeTo(t.buffer, 0);
+		t.buffer.flip();
+		return n;
+	}
+
+	/**
+	 * Queue a template in a lane
+	 */
+	private boolean queue(Templates t, int lane, MAVLinkMessage msg) {
+		byte[] frame = queue.obtain(encode(t, msg));
+		t.buffer.get(frame);
+		queue.offer(lane, frame);
+		return true;
+	}
+
+	/**
+	 * Replace the frame of a latest-wins slot by a template
+	 */
+	private boolean latest(Templates t, int slot, MAVLinkMessage msg) {
+		byte[] frame = queue.obtain(slot, encode(t, msg));
+		t.buffer.get(frame);
+		queue.offerLatest(slot, frame);
+		return true;
+	}
+
+	/**
+	 * Stop the writer thread
+	 */
+	public void close() {
+		queue.close();
+	}
+
+	public OutboundQueue getQueue() {
+		return queue;
+	}
+
 	public boolean send(int streamId) {
-		msg_request_data_stream ds = new msg_request_data_stream(255, 1);
-		ds.sequence = sequence++;
+		Templates t = templates.get();
+		msg_request_data_stream ds = t.dataStream;
 		ds.req_message_rate = 10;
 		ds.target_system = 1;
 		ds.target_component = 1;
@@ -45,20 +159,15 @@ public class Sender {
 		} else {
 			ds.start_stop = 0;
 		}
-        byte[] result;
-		try {
-			result = ds.encode();
-	        spc.writeData(result);
-	        return true;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return false;
+		return queue(t, OutboundQueue.BULK, ds);
 	}
 	
 	public boolean command(double x, double y, double z) {
-		System.out.println("sending move message: vx=" + x + ", vy=" + y + ", vz=" + z);
-		msg_set_position_target_local_ned msg = new msg_set_position_target_local_ned(255, 1);
+		if (log != null) {
+			log("sending move message: vx=" + x + ", vy=" + y + ", vz=" + z);
+		}
+		Templates t = templates.get();
+		msg_set_position_target_local_ned msg = t.positionTarget;
 		msg.time_boot_ms = 0; //System.currentTimeMillis() - startTime;
 		msg.target_system = 0; //try 0? was 1 before
 		msg.target_component = 0;//(byte) MAV_COMPONENT.MAV_COMP_ID_ALL;
@@ -75,15 +184,7 @@ public class Sender {
 		msg.afz = 0;
 		msg.yaw = 0;
 		msg.yaw_rate = 0;
-		byte[] result;
-		try {
-			result = msg.encode();
-	        spc.writeData(result);
-	        return true;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return false;
+		return latest(t, SLOT_POSITION_TARGET, msg);
 	}
 	
 	/**
@@ -96,8 +197,11 @@ public class Sender {
 	 * @return
 	 */
 	public boolean rc(int aileronValue, int elevatorValue, int throttleValue, int rudderValue) {
-		System.out.println("sending rc message: value=" + aileronValue + "," + elevatorValue + "," + throttleValue + "," + rudderValue);
-	    msg_rc_channels_override msg = new msg_rc_channels_override(255, 1);
+		if (log != null) {
+			log("sending rc message: value=" + aileronValue + "," + elevatorValue + "," + throttleValue + "," + rudderValue);
+		}
+		Templates t = templates.get();
+	    msg_rc_channels_override msg = t.rcOverride;
 		msg.target_system = 1;
 		msg.target_component = (byte) MAV_COMPONENT.MAV_COMP_ID_ALL;
 		msg.chan1_raw = aileronValue;
@@ -108,20 +212,15 @@ public class Sender {
 		msg.chan6_raw = 65535;
 		msg.chan7_raw = 65535;
 		msg.chan8_raw = 65535;
-		byte[] result;
-		try {
-			result = msg.encode();
-	        spc.writeData(result);
-	        return true;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return false;
+		return latest(t, SLOT_RC_OVERRIDE, msg);
 	}
 	
 	public void land(float xDegrees, float yDegrees) {
-		System.out.println("Setting landing target to: x=" + xDegrees + ", y=" + yDegrees + " degrees");
-		msg_landing_target msg = new msg_landing_target(255,1);
+		if (log != null) {
+			log("Setting landing target to: x=" + xDegrees + ", y=" + yDegrees + " degrees");
+		}
+		Templates t = templates.get();
+		msg_landing_target msg = t.landingTarget;
 		msg.time_usec = 0;//(System.currentTimeMillis() - startTime)*1000;
 		msg.target_num = 0; //1;
 		msg.frame = MAV_FRAME.MAV_FRAME_BODY_OFFSET_NED; //I think?
@@ -131,17 +230,12 @@ public class Sender {
 		msg.size_x = 0;
 		msg.size_y = 0;
 		
-        byte[] result;
-		try {
-			result = msg.encode();
-	        spc.writeData(result);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		latest(t, SLOT_LANDING_TARGET, msg);
 	}
 	
 	public boolean arm(boolean arm) {
-		msg_command_long msg = new msg_command_long(255,1);
+		Templates t = templates.get();
+		msg_command_long msg = t.commandLong;
 		msg.target_system = 1;
 		msg.target_component = (byte) MAV_COMPONENT.MAV_COMP_ID_SYSTEM_CONTROL;
 
@@ -155,83 +249,67 @@ public class Sender {
 		msg.param7 = 0;
 		msg.confirmation = 0;
 		
-        byte[] result;
-		try {
-			result = msg.encode();
-	        spc.writeData(result);
-	        return true;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return false;
+		return queue(t, OutboundQueue.HIGH, msg);
 	}
 
 	public boolean heartbeat() {
-		msg_heartbeat hb = new msg_heartbeat(255, 1);
-	    hb.sequence = sequence++;
+		Templates t = templates.get();
+		msg_heartbeat hb = t.heartbeat;
 	    hb.autopilot = MAV_AUTOPILOT.MAV_AUTOPILOT_PX4;
 	    hb.base_mode = MAV_MODE_FLAG.MAV_MODE_FLAG_STABILIZE_ENABLED;
 	    hb.custom_mode = 0; //custom mode
 	    hb.mavlink_version = 3;
 	    hb.system_status = MAV_STATE.MAV_STATE_ACTIVE;
-	    byte[] result;
-		try {
-			result = hb.encode();
-	        spc.writeData(result);
-	        return true;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return false;
+		return latest(t, SLOT_HEARTBEAT, hb);
     }
 
 	public void mode(String mode, boolean armed) {
-		msg_set_mode msg = new msg_set_mode(255,1);
+		Templates t = templates.get();
+		msg_set_mode msg = t.setMode;
 		msg.target_system = 1;
 
 		if (mode.equals("stabilize")) {
-			System.out.println("Setting to stabilize mode");
+			log("Setting to stabilize mode");
 			msg.base_mode = MAV_MODE.MAV_MODE_STABILIZE_DISARMED + 1; //stabilize mode is 81 for APM
 			msg.custom_mode = 0; //custom mode 0 is default
 		} else if (mode.equals("land")){
-			System.out.println("Setting to land mode");
+			log("Setting to land mode");
 			msg.base_mode = MAV_MODE.MAV_MODE_STABILIZE_DISARMED + 1;
 			msg.custom_mode = 9; //custom mode 9 = land
 		} else if (mode.equals("guided")){
-			System.out.println("Setting to guided mode");
+			log("Setting to guided mode");
 			msg.base_mode = MAV_MODE.MAV_MODE_GUIDED_DISARMED + 1;
 			msg.custom_mode = 4; //custom mode 4 = guided for APM copter
 		}  else if (mode.equals("loiter")){
-			System.out.println("Setting to loiter mode");
+			log("Setting to loiter mode");
 			msg.base_mode = MAV_MODE.MAV_MODE_STABILIZE_DISARMED + 1;
 			msg.custom_mode = 5; //custom mode 5 = LOITER for APM copter
 //			msg.custom_mode = 16; //custom mode 16 = POSITION HOLD for APM copter
 		} else if (mode.equals("alt_hold")){
-			System.out.println("Setting to alt_hold mode");
+			log("Setting to alt_hold mode");
 			msg.base_mode = MAV_MODE.MAV_MODE_STABILIZE_DISARMED + 1;
 			msg.custom_mode = 2; //custom mode 2 = alt_hold for APM copter
 		} else {
-			System.out.println("Setting to stabilize mode");
+			log("Setting to stabilize mode");
 			msg.base_mode = MAV_MODE.MAV_MODE_STABILIZE_DISARMED + 1; //default
 			msg.custom_mode = 0; 
 		}
 		if (armed) {
 			msg.base_mode += 128;
-			System.out.println("Setting base mode to: " + msg.base_mode);
+			if (log != null) {
+				log("Setting base mode to: " + msg.base_mode);
+			}
 		}
 
-        byte[] result;
-		try {
-			result = msg.encode();
-	        spc.writeData(result);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		queue(t, OutboundQueue.HIGH, msg);
 	}
 
 	public void test(int throttle, int speed) {
-		System.out.println("TEST: thr=" + throttle + ", speed=" + speed);
-		msg_command_long msg = new msg_command_long(255,1);
+		if (log != null) {
+			log("TEST: thr=" + throttle + ", speed=" + speed);
+		}
+		Templates t = templates.get();
+		msg_command_long msg = t.commandLong;
 		msg.target_system = 1;
 		msg.target_component = (byte) MAV_COMPONENT.MAV_COMP_ID_SYSTEM_CONTROL;
 
@@ -245,13 +323,7 @@ public class Sender {
 		msg.param7 = 0;
 		msg.confirmation = 0;
 		
-        byte[] result;
-		try {
-			result = msg.encode();
-	        spc.writeData(result);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		queue(t, OutboundQueue.NORMAL, msg);
 	}
 	
 }
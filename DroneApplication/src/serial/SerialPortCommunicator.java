@@ -1,6 +1,8 @@
 package serial;
 
 import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
 import jssc.SerialPortException;
 
 /**
@@ -53,6 +55,36 @@ public class SerialPortCommunicator {
 		}
 	}
 	
+	/**
+	 * Push the received bytes into a ring buffer on each RXCHAR event of the port
+	 * @return false if the port is closed or the listener can't be added
+	 */
+	public boolean addDataListener(final ByteRingBuffer ring) {
+		if (currentSerialPort == null || !currentSerialPort.isOpened()) {
+			System.out.println("port is closed");
+			return false;
+		}
+		try {
+			currentSerialPort.addEventListener(new SerialPortEventListener() {
+				@Override
+				public void serialEvent(SerialPortEvent event) {
+					if (event.isRXCHAR() && event.getEventValue() > 0) {
+						try {
+							byte[] data = currentSerialPort.readBytes(event.getEventValue());
+							ring.write(data, 0, data.length);
+						} catch (SerialPortException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+			}, SerialPort.MASK_RXCHAR);
+			return true;
+		} catch (SerialPortException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
 	public byte[] readData() {
 		if (currentSerialPort != null && currentSerialPort.isOpened()) {
 			//System.out.println(System.currentTimeMillis());
@@ -26,7 +26,8 @@ import java.util.Comparator;
 
 /**
  * Comparator to sort field in MAVLink messages.
- * Sort only on the size of field type and ignore array size
+ * Sort only on the size of field type and ignore array size.
+ * MAVLink 2 extension fields are not sorted and stay after the other fields
  * @author ghelle
  * @version $Rev: 4 $
  *
@@ -34,6 +35,16 @@ import java.util.Comparator;
 public class FieldCompare implements Comparator<MAVLinkField> {
 
     public int compare(MAVLinkField field2, MAVLinkField field1) {
+        //Keep extensions at the end in declaration order
+        if (field1.isExtension() || field2.isExtension()) {
+            if (!field2.isExtension()) {
+                return -1;
+            }
+            else if (!field1.isExtension()) {
+                return 1;
+            }
+            return 0;
+        }
         //Sort on type size
         if (field1.getType().getTypeSize() > field2.getType().getTypeSize()) {
             return 1;
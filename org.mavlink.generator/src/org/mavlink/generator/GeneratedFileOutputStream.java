@@ -0,0 +1,110 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLink Java Generator
+ * Module : org.mavlink.generator
+ * File : org.mavlink.generator.GeneratedFileOutputStream.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Output stream for a generated file.
+ * Content is kept in memory and written on close only if its hash differs from the existing file,
+ * so unchanged files keep their date and are not compiled again.
+ * @version $Rev$
+ *
+ */
+public class GeneratedFileOutputStream extends ByteArrayOutputStream {
+
+    private final File file;
+
+    private final MAVLinkGenerator generator;
+
+    private boolean closed = false;
+
+    /**
+     * @param filename generated file
+     * @param generator generator to notify of written or unchanged file
+     */
+    public GeneratedFileOutputStream(String filename, MAVLinkGenerator generator) {
+        super(4096);
+        this.file = new File(filename);
+        this.generator = generator;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (file.isFile() && file.length() == count && Arrays.equals(digest(buf, count), digest(file))) {
+            generator.fileGenerated(false);
+            return;
+        }
+        OutputStream output = new FileOutputStream(file, false);
+        try {
+            writeTo(output);
+        }
+        finally {
+            output.close();
+        }
+        generator.fileGenerated(true);
+    }
+
+    /**
+     * @return MD5 hash of the first length bytes of data
+     */
+    private static byte[] digest(byte[] data, int length) throws IOException {
+        MessageDigest md = newDigest();
+        md.update(data, 0, length);
+        return md.digest();
+    }
+
+    /**
+     * @return MD5 hash of the file content
+     */
+    private static byte[] digest(File file) throws IOException {
+        MessageDigest md = newDigest();
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = input.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        }
+        finally {
+            input.close();
+        }
+        return md.digest();
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 not available : " + e);
+        }
+    }
+
+}
@@ -52,6 +52,8 @@ public interface IMAVLinkTag {
 
     public final static String FIELD_TAG = "field";
 
+    public final static String EXTENSIONS_TAG = "extensions";
+
     public final static String ID_ATTR = "id";
 
     public final static String NAME_ATTR = "name";
@@ -88,6 +88,35 @@ public class MAVLinkData {
         this.messages = messages;
     }
 
+    /**
+     * Add enums and messages of an included file, as if it was parsed in this data.
+     * Enums and messages are copied so the included data can be merged in several dialects.
+     * @param include parsed data of the included file
+     */
+    public void merge(MAVLinkData include) {
+        if (include.getVersion() != null) {
+            version = include.getVersion();
+        }
+        for (MAVLinkEnum includeEnum : include.getEnums().values()) {
+            MAVLinkEnum mavlinkEnum = enums.get(includeEnum.getName());
+            if (mavlinkEnum == null) {
+                mavlinkEnum = new MAVLinkEnum(includeEnum.getName());
+                mavlinkEnum.setDescription(includeEnum.getDescription());
+                enums.put(includeEnum.getName(), mavlinkEnum);
+            }
+            mavlinkEnum.getEntries().addAll(includeEnum.getEntries());
+        }
+        for (MAVLinkMessage includeMessage : include.getMessages().values()) {
+            MAVLinkMessage message = messages.get(includeMessage.getName());
+            if (message == null) {
+                message = new MAVLinkMessage(includeMessage.getId(), includeMessage.getName());
+                message.setDescription(includeMessage.getDescription());
+                messages.put(includeMessage.getName(), message);
+            }
+            message.getFields().addAll(includeMessage.getFields());
+        }
+    }
+
     /**
      * @return The file
      */
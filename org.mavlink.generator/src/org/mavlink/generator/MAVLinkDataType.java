@@ -345,6 +345,27 @@ public class MAVLinkDataType {
         return getJavaType(type, isArray, arrayLenth, name);
     }
 
+    /**
+     * Build Java type declaration in a String
+     * @param name
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return Java type declaration
+     */
+    public String getJavaType(String name, boolean byteChars) {
+        if (isByteChars(byteChars)) {
+            return "byte[] " + name + " = new byte[" + arrayLenth + "];";
+        }
+        return getJavaType(name);
+    }
+
+    /**
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return true if the field is a char array stored in a byte array
+     */
+    public boolean isByteChars(boolean byteChars) {
+        return byteChars && isArray && (type == CHAR || type == ARRAY);
+    }
+
     /**
      * Return enum type from its name
      * @param name
@@ -399,6 +420,60 @@ public class MAVLinkDataType {
         return getCType(type);
     }
 
+    /**
+     * Return code in a String to read the field in byte buffer, with a bulk transfer for arrays when possible.
+     * @param name field name
+     * @param forEmbeddedJava true if code must be embedded
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return the code reader for the field in a String
+     */
+    public String getReadType(String name, boolean forEmbeddedJava, boolean byteChars) {
+        String value = getBulkReadType(name, forEmbeddedJava, byteChars);
+        if (value != null) {
+            return value;
+        }
+        return getReadType(name, forEmbeddedJava);
+    }
+
+    /**
+     * Return code in a String to read an array field with one bulk transfer :
+     * a typed view of the ByteBuffer for float, double and long arrays, or one read for char arrays stored in bytes.
+     * @param name field name
+     * @param forEmbeddedJava true if code must be embedded
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return the code reader or null if the field must be read element by element
+     */
+    public String getBulkReadType(String name, boolean forEmbeddedJava, boolean byteChars) {
+        if (isByteChars(byteChars)) {
+            if (forEmbeddedJava) {
+                return "  dis.readFully(" + name + ");\n";
+            }
+            return "  dis.get(" + name + ");\n";
+        }
+        String view = getBufferView();
+        if (!isArray || forEmbeddedJava || view == null) {
+            return null;
+        }
+        return "  dis." + view + "().get(" + name + ");\n  dis.position(dis.position()+" + getLengthType() + ");\n";
+    }
+
+    /**
+     * @return name of the ByteBuffer method giving a view with the Java type of the field, null if there is none
+     */
+    private String getBufferView() {
+        switch (type) {
+            case FLOAT:
+                return "asFloatBuffer";
+            case DOUBLE:
+                return "asDoubleBuffer";
+            case INT64:
+            case UINT64:
+                return "asLongBuffer";
+            default:
+                return null;
+        }
+    }
+
     /**
      * Return code in a String to read the field in byte buffer.
      * Use different Java API if code is embedded
@@ -522,6 +597,240 @@ public class MAVLinkDataType {
         return value;
     }
 
+    /**
+     * Return code in a String to read the field at an absolute offset in a byte array named buf.
+     * Char arrays stored in bytes are copied with System.arraycopy.
+     * @param name field name
+     * @param position field position in the payload
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return the code reader for the field in a String
+     */
+    public String getAbsoluteReadType(String name, int position, boolean isLittleEndian, boolean byteChars) {
+        if (isByteChars(byteChars)) {
+            return "  System.arraycopy(buf, offset+" + position + ", " + name + ", 0, " + arrayLenth + ");\n";
+        }
+        return getAbsoluteReadType(name, position, isLittleEndian);
+    }
+
+    /**
+     * Return code in a String to read the field at an absolute offset in a byte array named buf.
+     * No stream is used so the message can be decoded directly in the frame buffer.
+     * @param name field name
+     * @param position field position in the payload
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return the code reader for the field in a String
+     */
+    public String getAbsoluteReadType(String name, int position, boolean isLittleEndian) {
+        String value = "";
+        String arrayString = "";
+        String endLoop = "  }\n";
+        String offset = "offset+" + position;
+        if (!isArray) {
+            endLoop = "";
+        }
+        else {
+            arrayString = "[i]";
+            offset = offset + "+i" + (getTypeSize() != 1 ? "*" + getTypeSize() : "");
+            value = "  for (int i=0; i<" + arrayLenth + "; i++) {\n";
+        }
+        value = value + "  " + (isArray ? "  " : "") + name + arrayString + " = " + getAbsoluteReadExpression("buf", offset, isLittleEndian) + ";";
+        value = value + "\n";
+        value = value + endLoop;
+
+        return value;
+    }
+
+    /**
+     * Return code in a String of the expression reading one element of the field at an absolute offset in a byte array.
+     * The value has the same Java type and sign than a field decoded from a stream.
+     * @param buffer name of the byte array
+     * @param offset code of the offset in the byte array
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return the expression in a String
+     */
+    public String getAbsoluteReadExpression(String buffer, String offset, boolean isLittleEndian) {
+        String value = "";
+        String endian = isLittleEndian ? "true" : "false";
+        switch (type) {
+            case ARRAY:
+            case CHAR:
+                value = "(char)" + buffer + "[" + offset + "]"; //"char"
+                break;
+            case UINT8:
+                value = "(int)" + buffer + "[" + offset + "]&0x00FF"; //"uint8_t";
+                break;
+            case INT8:
+                value = "(int)" + buffer + "[" + offset + "]"; //"int8_t";
+                break;
+            case INT16:
+                value = "(int)MAVLinkBytes.getShort(" + buffer + ", " + offset + ", " + endian + ")"; //"int16_t";
+                break;
+            case UINT16:
+                value = "(int)MAVLinkBytes.getShort(" + buffer + ", " + offset + ", " + endian + ")&0x00FFFF"; //"uint16_t";
+                break;
+            case INT32:
+                value = "(int)MAVLinkBytes.getInt(" + buffer + ", " + offset + ", " + endian + ")"; //"int32_t";
+                break;
+            case UINT32:
+                value = "(int)MAVLinkBytes.getInt(" + buffer + ", " + offset + ", " + endian + ")&0x00FFFFFFFF"; //"uint32_t";
+                break;
+            case INT64:
+            case UINT64:
+                value = "(long)MAVLinkBytes.getLong(" + buffer + ", " + offset + ", " + endian + ")"; //"int64_t";
+                break;
+            case DOUBLE:
+                value = "(double)MAVLinkBytes.getDouble(" + buffer + ", " + offset + ", " + endian + ")"; //"double";
+                break;
+            case FLOAT:
+                value = "(float)MAVLinkBytes.getFloat(" + buffer + ", " + offset + ", " + endian + ")"; //"float";
+                break;
+            default:
+        }
+        return value;
+    }
+
+    /**
+     * Return code in a String to read the field in a MemorySegment named seg at offset+position,
+     * with value layouts of the generated class MAVLinkLayouts.
+     * @param name field name
+     * @param position field position in the payload
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return the code reader for the field in a String
+     */
+    public String getSegmentReadType(String name, int position, boolean byteChars) {
+        if (isByteChars(byteChars)) {
+            return "  MemorySegment.copy(seg, MAVLinkLayouts.BYTE, offset+" + position + ", " + name + ", 0, " + arrayLenth + ");\n";
+        }
+        String offset = "offset+" + position;
+        if (!isArray) {
+            return "  " + name + " = " + getSegmentReadExpression(offset) + ";\n";
+        }
+        offset = offset + "+i" + (getTypeSize() != 1 ? "*" + getTypeSize() : "");
+        return "  for (int i=0; i<" + arrayLenth + "; i++) {\n    " + name + "[i] = " + getSegmentReadExpression(offset) + ";\n  }\n";
+    }
+
+    /**
+     * Return code in a String of the expression reading one element of the field in a MemorySegment named seg.
+     * The value has the same Java type and sign than a field decoded from a stream.
+     * @param offset code of the offset in the segment
+     * @return the expression in a String
+     */
+    public String getSegmentReadExpression(String offset) {
+        String value = "";
+        switch (type) {
+            case ARRAY:
+            case CHAR:
+                value = "(char)seg.get(MAVLinkLayouts.BYTE, " + offset + ")"; //"char"
+                break;
+            case UINT8:
+                value = "(int)seg.get(MAVLinkLayouts.BYTE, " + offset + ")&0x00FF"; //"uint8_t";
+                break;
+            case INT8:
+                value = "(int)seg.get(MAVLinkLayouts.BYTE, " + offset + ")"; //"int8_t";
+                break;
+            case INT16:
+                value = "(int)seg.get(MAVLinkLayouts.SHORT, " + offset + ")"; //"int16_t";
+                break;
+            case UINT16:
+                value = "(int)seg.get(MAVLinkLayouts.SHORT, " + offset + ")&0x00FFFF"; //"uint16_t";
+                break;
+            case INT32:
+                value = "(int)seg.get(MAVLinkLayouts.INT, " + offset + ")"; //"int32_t";
+                break;
+            case UINT32:
+                value = "(int)seg.get(MAVLinkLayouts.INT, " + offset + ")&0x00FFFFFFFF"; //"uint32_t";
+                break;
+            case INT64:
+            case UINT64:
+                value = "(long)seg.get(MAVLinkLayouts.LONG, " + offset + ")"; //"int64_t";
+                break;
+            case DOUBLE:
+                value = "(double)seg.get(MAVLinkLayouts.DOUBLE, " + offset + ")"; //"double";
+                break;
+            case FLOAT:
+                value = "(float)seg.get(MAVLinkLayouts.FLOAT, " + offset + ")"; //"float";
+                break;
+            default:
+        }
+        return value;
+    }
+
+    /**
+     * Return code in a String to write the field in a MemorySegment named seg at offset+position
+     * @param name field name
+     * @param position field position in the payload
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return the code writer for the field in a String
+     */
+    public String getSegmentWriteType(String name, int position, boolean byteChars) {
+        if (isByteChars(byteChars)) {
+            return "  MemorySegment.copy(" + name + ", 0, seg, MAVLinkLayouts.BYTE, offset+" + position + ", " + arrayLenth + ");\n";
+        }
+        String offset = "offset+" + position;
+        String value = name;
+        String loop = "";
+        String endLoop = "";
+        if (isArray) {
+            offset = offset + "+i" + (getTypeSize() != 1 ? "*" + getTypeSize() : "");
+            value = name + "[i]";
+            loop = "  for (int i=0; i<" + arrayLenth + "; i++) {\n  ";
+            endLoop = "  }\n";
+        }
+        String write = "";
+        switch (type) {
+            case ARRAY:
+            case CHAR:
+                write = "seg.set(MAVLinkLayouts.BYTE, " + offset + ", (byte)(" + value + "));"; //"char"
+                break;
+            case UINT8:
+            case INT8:
+                write = "seg.set(MAVLinkLayouts.BYTE, " + offset + ", (byte)(" + value + "&0x00FF));"; //"uint8_t";
+                break;
+            case INT16:
+            case UINT16:
+                write = "seg.set(MAVLinkLayouts.SHORT, " + offset + ", (short)(" + value + "&0x00FFFF));"; //"int16_t";
+                break;
+            case INT32:
+            case UINT32:
+                write = "seg.set(MAVLinkLayouts.INT, " + offset + ", (int)(" + value + "&0x00FFFFFFFF));"; //"int32_t";
+                break;
+            case INT64:
+            case UINT64:
+                write = "seg.set(MAVLinkLayouts.LONG, " + offset + ", " + value + ");"; //"int64_t";
+                break;
+            case DOUBLE:
+                write = "seg.set(MAVLinkLayouts.DOUBLE, " + offset + ", " + value + ");"; //"double";
+                break;
+            case FLOAT:
+                write = "seg.set(MAVLinkLayouts.FLOAT, " + offset + ", " + value + ");"; //"float";
+                break;
+            default:
+        }
+        return loop + "  " + write + "\n" + endLoop;
+    }
+
+    /**
+     * Return code in a String to write the field in byte buffer, with a bulk transfer for arrays when possible.
+     * @param name field name
+     * @param forEmbeddedJava true if code must be embedded
+     * @param byteChars true if char arrays are stored in byte arrays
+     * @return the code writer for the field in a String
+     */
+    public String getWriteType(String name, boolean forEmbeddedJava, boolean byteChars) {
+        if (isByteChars(byteChars)) {
+            if (forEmbeddedJava) {
+                return "  dos.write(" + name + ");\n";
+            }
+            return "  dos.put(" + name + ");\n";
+        }
+        String view = getBufferView();
+        if (isArray && !forEmbeddedJava && view != null) {
+            return "  dos." + view + "().put(" + name + ");\n  dos.position(dos.position()+" + getLengthType() + ");\n";
+        }
+        return getWriteType(name, forEmbeddedJava);
+    }
+
     /**
      * Return code in a String to write the field in byte buffer.
      * Use different Java API if code is embedded
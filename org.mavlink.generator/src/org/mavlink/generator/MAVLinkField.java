@@ -45,6 +45,11 @@ public class MAVLinkField {
      */
     private String description;
 
+    /**
+     * True if the field is declared after the extensions tag (MAVLink 2 only)
+     */
+    private boolean extension = false;
+
     /**
      * MAVLink Field constructor
      * @param type
@@ -97,4 +102,18 @@ public class MAVLinkField {
         this.description = description;
     }
 
+    /**
+     * @return True if the field is a MAVLink 2 extension
+     */
+    public boolean isExtension() {
+        return extension;
+    }
+
+    /**
+     * @param extension True if the field is a MAVLink 2 extension
+     */
+    public void setExtension(boolean extension) {
+        this.extension = extension;
+    }
+
 }
@@ -23,13 +23,20 @@
 package org.mavlink.generator;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -60,11 +67,74 @@ public class MAVLinkGenerator {
 
     protected boolean useExtraByte = true;
 
+    /**
+     * Option to generate decode(byte[] buf, int offset) with absolute reads in the frame buffer
+     */
+    protected boolean absoluteDecode = false;
+
+    /**
+     * Option to generate MAVLink 2 framing : 0xFD start, 24 bits ids, flags, extensions and payload truncation
+     */
+    protected boolean mavlink2 = false;
+
+    /**
+     * Option to store char arrays in byte arrays, with a String built only when asked
+     */
+    protected boolean byteChars = false;
+
+    /**
+     * Option to generate decode and encodeTo on java.lang.foreign.MemorySegment, for off-heap frames
+     */
+    protected boolean memorySegment = false;
+
     protected String source = "resources/v1.0/";
 
     protected String target = "target";
 
-    public static int[] MAVLINK_MESSAGE_CRCS = new int[256];
+    /**
+     * Extra crc of messages with an id below 256, for IMAVLinkCRC.MAVLINK_MESSAGE_CRCS
+     */
+    protected int[] extraCrcs = new int[256];
+
+    /**
+     * Extra crc of all messages sorted by message id, needed for MAVLink 2 ids above 255
+     */
+    protected Map<Integer, Integer> messageCrcs = new TreeMap<Integer, Integer>();
+
+    /**
+     * Included files already parsed, by canonical path. Shared by the generators of all dialects.
+     */
+    protected Map<String, MAVLinkData> includes = new HashMap<String, MAVLinkData>();
+
+    /**
+     * Number of files written and of files unchanged since the last generation
+     */
+    protected int filesWritten = 0;
+
+    protected int filesUnchanged = 0;
+
+    public MAVLinkGenerator() {
+    }
+
+    /**
+     * Create a generator for one dialect with the options of another one.
+     * Generation state is not shared, except the cache of included files.
+     * 
+     * @param options
+     */
+    public MAVLinkGenerator(MAVLinkGenerator options) {
+        debug = options.debug;
+        forEmbeddedJava = options.forEmbeddedJava;
+        isLittleEndian = options.isLittleEndian;
+        useExtraByte = options.useExtraByte;
+        absoluteDecode = options.absoluteDecode;
+        mavlink2 = options.mavlink2;
+        byteChars = options.byteChars;
+        memorySegment = options.memorySegment;
+        source = options.source;
+        target = options.target;
+        includes = options.includes;
+    }
 
     /**
      * Main class for the generator. 
@@ -76,6 +146,11 @@ public class MAVLinkGenerator {
      *     forEmbeddedJava : true if generated code must use apis for embedded code, false else 
      *     useExtraByte : if true use extra crc byte to compute CRC. If true generate for MAVLink 1.0 else MAVLink 0.9
      *     debug : true to generate toString methods in each message class 
+     *     options : optional list of generation options
+     *         absoluteDecode : generate decode(byte[] buf, int offset) and use it in MAVLinkMessageFactory
+     *         mavlink2 : generate MAVLink 2 framing with extensions and payload truncation (implies useExtraByte)
+     *         byteChars : store char arrays in byte arrays copied in bulk, with a String built on first get
+     *         memorySegment : generate decode and encodeTo on off-heap MemorySegment (needs Java 22)
      *     
      * Example : java org.mavlink.generator.MAVLinkGenerator resources/1.0 target/ true true true true
      *   Generate MAVLink message Java classes for mavlink xml files contains in resources/1.0 in target directory 
@@ -86,7 +161,7 @@ public class MAVLinkGenerator {
     public static void main(String[] args) {
 
         MAVLinkGenerator generator = new MAVLinkGenerator();
-        if (args.length != 6) {
+        if (args.length < 6) {
             generator.usage(args);
             System.exit(-1);
         }
@@ -96,6 +171,12 @@ public class MAVLinkGenerator {
         generator.forEmbeddedJava = Boolean.parseBoolean(args[3]);
         generator.useExtraByte = Boolean.parseBoolean(args[4]);
         generator.debug = Boolean.parseBoolean(args[5]);
+        for (int i = 6; i < args.length; i++) {
+            if (!generator.setOption(args[i])) {
+                generator.usage(args);
+                System.exit(-1);
+            }
+        }
 
         File src = new File(generator.source);
         if (src.isDirectory()) {
@@ -125,6 +206,11 @@ public class MAVLinkGenerator {
         System.out.println("  forEmbeddedJava : true if generated code must use apis for embedded code, false else");
         System.out.println("  useExtraByte : if true use extra crc byte to compute CRC. If true generate for MAVLink 1.0 else MAVLink 0.9");
         System.out.println("  debug : true to generate toString methods in each message class");
+        System.out.println("  options : optional list of generation options");
+        System.out.println("    absoluteDecode : generate decode(byte[] buf, int offset) and use it in MAVLinkMessageFactory");
+        System.out.println("    mavlink2 : generate MAVLink 2 framing with extensions and payload truncation (implies useExtraByte)");
+        System.out.println("    byteChars : store char arrays in byte arrays copied in bulk, with a String built on first get");
+        System.out.println("    memorySegment : generate decode and encodeTo on off-heap MemorySegment (needs Java 22)");
         System.out.println("  ");
         System.out.println("Example :");
         System.out.println("  java org.mavlink.generator.MAVLinkGenerator  resources/v1.0 target/ true true true");
@@ -133,37 +219,95 @@ public class MAVLinkGenerator {
     }
 
     /**
-     * Parse all xml files in directory and call generators methods
+     * Set a generation option from its name
+     * 
+     * @param option
+     * @return false if the option is unknown
+     */
+    public boolean setOption(String option) {
+        if (option.equals("absoluteDecode")) {
+            absoluteDecode = true;
+        }
+        else if (option.equals("mavlink2")) {
+            mavlink2 = true;
+            useExtraByte = true;
+        }
+        else if (option.equals("byteChars")) {
+            byteChars = true;
+        }
+        else if (option.equals("memorySegment")) {
+            memorySegment = true;
+        }
+        else {
+            System.out.println("Unknown option : " + option);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse all xml files in directory and call generators methods.
+     * Each dialect is generated in its own directory by a pooled task with its own generator.
      * 
      * @param path
      */
     protected void parseDirectory(String path) {
         File directory = new File(path);
         String files[] = directory.list();
-        String file = "";
+        final List<DialectTask> tasks = new ArrayList<DialectTask>();
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].endsWith(".xml")) {
+                int index = files[i].indexOf('.');
+                String rep = target + File.separator + files[i].substring(0, index);
+                tasks.add(new DialectTask(new MAVLinkGenerator(this), files[i], path, rep));
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         try {
-            for (int i = 0; i < files.length; i++) {
-                if (files[i].endsWith(".xml")) {
-                    int index = files[i].indexOf('.');
-                    String rep = target + File.separator + files[i].substring(0, index);
-                    parseFile(files[i], path, rep);
-                    //                    MAVLinkData mavlink = null;
-                    //                    mavlink = new MAVLinkData();
-                    //
-                    //                    Map<String, String> implementations = parseFile(mavlink, files[i], path, rep, false);
-                    //
-                    //                    generateMAVLinkClass(rep, implementations);
-                    //                    generateFactoryClass(mavlink, rep);
-                    //                    generateIMavlinkId(mavlink, rep);
-                    //                    generateMavlinkCoder(mavlink, rep);
-                    //                    generateIMavlinkCRC(rep);
-                    //                    imports = "";
-                }
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
             }
         }
-        catch (Exception e) {
-            System.err.println("MAVLinkGenerator Error : " + file + "  =  " + e);
-            e.printStackTrace();
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Generation interrupted in directory : " + path);
+        }
+        catch (ExecutionException e) {
+            System.err.println("ERROR : " + e.getCause());
+            e.getCause().printStackTrace();
+        }
+        finally {
+            pool.shutdown();
+        }
+        for (DialectTask task : tasks) {
+            filesWritten += task.generator.filesWritten;
+            filesUnchanged += task.generator.filesUnchanged;
+        }
+        System.out.println("Generated files : " + filesWritten + " written, " + filesUnchanged + " unchanged");
+    }
+
+    /**
+     * Generation of one dialect xml file
+     */
+    protected static class DialectTask implements Callable<Void> {
+        final MAVLinkGenerator generator;
+
+        final String filename;
+
+        final String dir;
+
+        final String destination;
+
+        DialectTask(MAVLinkGenerator generator, String filename, String dir, String destination) {
+            this.generator = generator;
+            this.filename = filename;
+            this.dir = dir;
+            this.destination = destination;
+        }
+
+        public Void call() {
+            generator.parseFile(filename, dir, destination);
+            return null;
         }
     }
 
@@ -172,14 +316,24 @@ public class MAVLinkGenerator {
             System.out.println("Parse : " + filename + " in directory : " + dir + " to directory :" + destination);
             MAVLinkData mavlink = null;
             mavlink = new MAVLinkData();
+            messageCrcs.clear();
+            extraCrcs = new int[256];
             Map<String, String> implementations = parseFile(mavlink, filename, dir, destination, false);
 
             generateMAVLinkClass(destination, implementations);
             generateFactoryClass(mavlink, destination);
             generateIMavlinkId(mavlink, destination);
             generateMavlinkCoder(mavlink, destination);
+            generateDecoderClass(destination);
+            generateHandlerInterface(destination);
+            generateDispatcherClass(destination);
             generateIMavlinkCRC(destination);
+            generateSchemaClass(mavlink, destination);
+            if (memorySegment) {
+                generateLayoutsClass(destination);
+            }
             imports = "";
+            System.out.println("Generated " + mavlink.getFile() + " : " + filesWritten + " files written, " + filesUnchanged + " unchanged");
         }
         catch (Exception e) {
             System.err.println("MAVLinkGenerator Error : " + filename + "  =  " + e);
@@ -226,13 +380,73 @@ public class MAVLinkGenerator {
         MAVLinkHandler gestionnaire = new MAVLinkHandler(this, mavlink, path, target);
         parseur.parse(new File(path + File.separator + file), gestionnaire);
         mavlink = gestionnaire.getMavlink();
-        generateMessageClass(mavlink, target);
-        mavlink.getEnums().putAll(mavlink.getEnums());
-        mavlink.getMessages().putAll(mavlink.getMessages());
-        generateEnumClass(mavlink, target, implementations);
+        // Included enums and messages are generated with the including file
+        if (!inInclude) {
+            generateMessageClass(mavlink, target);
+            generateEnumClass(mavlink, target, implementations);
+        }
         return implementations;
     }
 
+    /**
+     * Add enums and messages of an included file in mavlink.
+     * Each included file is parsed only once and then taken from cache.
+     * 
+     * @param mavlink
+     *            MAVLink data to fill
+     * @param file
+     *            Included file
+     * @param path
+     *            Path to file
+     * @param target
+     *            Path for generation
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     */
+    public void parseInclude(MAVLinkData mavlink, String file, String path, String target) throws ParserConfigurationException, SAXException,
+            IOException {
+        String key = new File(path, file).getCanonicalPath();
+        MAVLinkData include;
+        synchronized (includes) {
+            include = includes.get(key);
+            if (include == null) {
+                include = new MAVLinkData();
+                parseFile(include, file, path, target, true);
+                includes.put(key, include);
+            }
+            else {
+                System.out.println("MAVLinkData INCLUDE : " + file.substring(0, file.indexOf('.')) + " from cache");
+            }
+        }
+        mavlink.merge(include);
+    }
+
+    /**
+     * Open the stream of a generated file, written only if its content changed
+     * 
+     * @param filename
+     * @return the stream
+     */
+    protected OutputStream openOutput(String filename) {
+        return new GeneratedFileOutputStream(filename, this);
+    }
+
+    /**
+     * Called when a generated file is closed
+     * 
+     * @param written
+     *            false if the file was unchanged
+     */
+    protected void fileGenerated(boolean written) {
+        if (written) {
+            filesWritten++;
+        }
+        else {
+            filesUnchanged++;
+        }
+    }
+
     /**
      * Generate MAVLink messages Java classes
      * 
@@ -240,60 +454,59 @@ public class MAVLinkGenerator {
      * @param targetPath
      */
     protected void generateMessageClass(MAVLinkData mavlink, String targetPath) {
-        StringBuffer sbRead, sbWrite, fieldWrite;
+        StringBuffer sbRead, sbReadAbsolute, sbWrite, sbWriteTo, fieldWrite, viewRead, sbAppend, sbJson, jsonNames, sbResetStrings, sbReadSegment, sbWriteSegment, sbDiff, sbCopy;
         String packageRootName = "org.mavlink.messages";
         String xmlFilename = mavlink.getFile();
         String packageName = packageRootName + "." + xmlFilename;
         String directory = targetPath + "/org/mavlink/messages/" + xmlFilename + "/";
         OutputStream output = null;
         PrintWriter writer = null;
-        String forToString = "";
         for (MAVLinkMessage message : mavlink.getMessages().values()) {
+            if (!isGenerated(message)) {
+                System.out.println("Message " + message.getName() + " ignored : id " + message.getId() + " needs MAVLink 2");
+                continue;
+            }
             String className = "msg_" + message.getName().toLowerCase();
             String filename = directory + className + ".java";
             imports = imports + "import " + packageName + "." + className + ";\n";
             try {
                 File file = new File(directory);
                 file.mkdirs();
-                output = new FileOutputStream(filename, false);
+                output = openOutput(filename);
                 writer = new PrintWriter(output);
                 sbRead = new StringBuffer();
+                sbReadAbsolute = new StringBuffer();
                 sbWrite = new StringBuffer();
+                sbWriteTo = new StringBuffer();
                 fieldWrite = new StringBuffer();
+                viewRead = new StringBuffer();
+                sbAppend = new StringBuffer();
+                sbJson = new StringBuffer();
+                sbResetStrings = new StringBuffer();
+                sbReadSegment = new StringBuffer();
+                sbWriteSegment = new StringBuffer();
+                sbDiff = new StringBuffer();
+                sbCopy = new StringBuffer();
+                jsonNames = new StringBuffer();
                 if (forEmbeddedJava) {
-                    //Issue 1 by BoxMonster44 : use correct packet start for mavlink 0.9
-                    if (useExtraByte) {
-                        sbWrite.append("  dos.writeByte((byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V10 + ");\n");
-                    }
-                    else {
-                        sbWrite.append("  dos.writeByte((byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V09 + ");\n");
-                    }
-                    sbWrite.append("  dos.writeByte(length & 0x00FF);\n");
-                    sbWrite.append("  dos.writeByte(sequence & 0x00FF);\n");
-                    sbWrite.append("  dos.writeByte(sysId & 0x00FF);\n");
-                    sbWrite.append("  dos.writeByte(componentId & 0x00FF);\n");
-                    sbWrite.append("  dos.writeByte(messageType & 0x00FF);\n");
+                    sbWrite.append(getStreamHeaderWrite());
                 }
                 else {
-                    //Issue 1 by BoxMonster44 : use correct packet start for mavlink 0.9
-                    if (useExtraByte) {
-                        sbWrite.append("  dos.put((byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V10 + ");\n");
-                    }
-                    else {
-                        sbWrite.append("  dos.put((byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V09 + ");\n");
-                    }
-                    sbWrite.append("  dos.put((byte)(length & 0x00FF));\n");
-                    sbWrite.append("  dos.put((byte)(sequence & 0x00FF));\n");
-                    sbWrite.append("  dos.put((byte)(sysId & 0x00FF));\n");
-                    sbWrite.append("  dos.put((byte)(componentId & 0x00FF));\n");
-                    sbWrite.append("  dos.put((byte)(messageType & 0x00FF));\n");
+                    sbWrite.append(getByteBufferHeaderWrite());
                 }
+                // encodeTo always writes in a ByteBuffer whatever the backend
+                sbWriteTo.append(getByteBufferHeaderWrite());
                 // Write Header
                 writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
                 writer.print("package " + packageName + ";\n");
                 writer.print("import " + packageRootName + ".MAVLinkMessage;\n");
+                writer.print("import " + packageRootName + ".MAVLinkMessageDecoder;\n");
                 writer.print("import org.mavlink.IMAVLinkCRC;\n");
                 writer.print("import org.mavlink.MAVLinkCRC;\n");
+                writer.print("import org.mavlink.MAVLinkJson;\n");
+                if (absoluteDecode) {
+                    writer.print("import org.mavlink.MAVLinkBytes;\n");
+                }
                 writer.print("import java.io.ByteArrayOutputStream;\n");
                 writer.print("import java.io.IOException;\n");
                 if (forEmbeddedJava) {
@@ -306,9 +519,12 @@ public class MAVLinkGenerator {
                         writer.print("import java.io.DataOutputStream;\n");
                     }
                 }
-                else {
-                    writer.print("import java.nio.ByteBuffer;\n");
-                    writer.print("import java.nio.ByteOrder;\n");
+                writer.print("import java.nio.ByteBuffer;\n");
+                writer.print("import java.nio.ByteOrder;\n");
+                writer.print("import java.util.Arrays;\n");
+                if (memorySegment) {
+                    writer.print("import java.lang.foreign.MemorySegment;\n");
+                    writer.print("import " + packageRootName + ".MAVLinkLayouts;\n");
                 }
                 String description = message.getDescription();
                 writer.print("/**\n * Class " + className + "\n * " + (description == null ? "" : message.getDescription().trim()) + "\n **/\n");
@@ -324,19 +540,51 @@ public class MAVLinkGenerator {
                 String extraCrcBuffer = message.getName() + " ";
                 // Write Fields
                 int fieldLen = 0;
+                int nbFields = 0;
                 //Issue 1 by BoxMonster44 : don't sort for mavlink 0.9
                 if (useExtraByte) {
                     Collections.sort(message.getFields(), new FieldCompare());
                 }
                 for (int j = 0; j < message.getFields().size(); j++) {
                     MAVLinkField field = message.getFields().get(j);
+                    if (field.isExtension() && !mavlink2) {
+                        // Extensions are not sent in MAVLink 1
+                        continue;
+                    }
                     fieldWrite.append("  /**\n   * " + field.getDescription().trim() + "\n   */\n");
                     MAVLinkDataType type = field.getType();
-                    fieldWrite.append("  public " + type.getJavaType(field.getName()) + "\n");
-                    sbRead.append(type.getReadType(field.getName(), forEmbeddedJava));
-                    sbWrite.append(type.getWriteType(field.getName(), forEmbeddedJava));
+                    fieldWrite.append("  public " + type.getJavaType(field.getName(), byteChars) + "\n");
+                    sbRead.append(type.getReadType(field.getName(), forEmbeddedJava, byteChars));
+                    sbReadAbsolute.append(type.getAbsoluteReadType(field.getName(), fieldLen, isLittleEndian, byteChars));
+                    viewRead.append(getViewRead(field, fieldLen));
+                    sbReadSegment.append(type.getSegmentReadType(field.getName(), fieldLen, byteChars));
+                    sbWriteSegment.append(type.getSegmentWriteType(field.getName(), fieldLen, byteChars));
+                    sbWrite.append(type.getWriteType(field.getName(), forEmbeddedJava, byteChars));
+                    sbWriteTo.append(type.getWriteType(field.getName(), false, byteChars));
                     String attr = field.getName();
-                    if (type.isArray && type.type == MAVLinkDataType.CHAR) {
+                    if (type.isByteChars(byteChars)) {
+                        String first = "" + attr.charAt(0);
+                        attr = first.toUpperCase() + field.getName().substring(1);
+                        String cache = field.getName().trim() + "String";
+                        sbResetStrings.append("  " + cache + " = null;\n");
+                        fieldWrite.append("  /**\n   * String of " + field.getName().trim() + " built on first get\n   */\n");
+                        fieldWrite.append("  private String " + cache + ";\n");
+                        fieldWrite.append("  public void set" + attr + "(String tmp) {\n");
+                        fieldWrite.append("    int len = Math.min(tmp.length(), " + type.arrayLenth + ");\n");
+                        fieldWrite.append("    for (int i=0; i<len; i++) {\n      " + field.getName() + "[i] = (byte) tmp.charAt(i);\n    }\n");
+                        fieldWrite.append("    for (int i=len; i<" + type.arrayLenth + "; i++) {\n      " + field.getName()
+                                          + "[i] = 0;\n    }\n");
+                        fieldWrite.append("    " + cache + " = null;\n  }\n");
+                        fieldWrite.append("  public String get" + attr + "() {\n");
+                        fieldWrite.append("    if (" + cache + " == null) {\n");
+                        fieldWrite.append("      int len = 0;\n");
+                        fieldWrite.append("      while (len < " + type.arrayLenth + " && " + field.getName() + "[len] != 0) len++;\n");
+                        fieldWrite.append("      char[] tmp = new char[len];\n");
+                        fieldWrite.append("      for (int i=0; i<len; i++) {\n        tmp[i] = (char) (" + field.getName() + "[i] & 0x00FF);\n      }\n");
+                        fieldWrite.append("      " + cache + " = new String(tmp);\n    }\n");
+                        fieldWrite.append("    return " + cache + ";\n  }\n");
+                    }
+                    else if (type.isArray && type.type == MAVLinkDataType.CHAR) {
                         String first = "" + attr.charAt(0);
                         attr = first.toUpperCase() + field.getName().substring(1);
                         fieldWrite.append("  public void set" + attr + "(String tmp) {\n");
@@ -345,23 +593,44 @@ public class MAVLinkGenerator {
                         fieldWrite.append("    for (int i=len; i<" + type.arrayLenth + "; i++) {\n      " + field.getName()
                                           + "[i] = 0;\n    }\n  }\n");
                         fieldWrite.append("  public String get" + attr + "() {\n");
-                        fieldWrite.append("    String result=\"\";\n");
-                        fieldWrite.append("    for (int i=0; i<" + type.arrayLenth + "; i++) {\n      if (" + field.getName()
-                                          + "[i] != 0) result=result+" + field.getName() + "[i]; else break;\n    }\n    return result;\n  }\n");
+                        fieldWrite.append("    int len = 0;\n");
+                        fieldWrite.append("    while (len < " + type.arrayLenth + " && " + field.getName() + "[len] != 0) len++;\n");
+                        fieldWrite.append("    return new String(" + field.getName() + ", 0, len);\n  }\n");
                     }
                     fieldLen += type.getLengthType();
-                    forToString = forToString + (j != 0 ? "+" : "") + "  \"  " + field.getName() + "=\"+"
-                                  + (field.getType().isArray && field.getType().type == MAVLinkDataType.CHAR ? "get" + attr + "()" : field.getName());
-                    extraCrcBuffer = extraCrcBuffer + type.getCType() + " " + field.getName() + " ";
-                    if (type.isArray) {
-                        extraCrcBuffer = extraCrcBuffer + (char) type.arrayLenth;
+                    sbAppend.append(getAppendTo(field));
+                    sbDiff.append(getDiff(field, nbFields));
+                    sbCopy.append(getCopy(field));
+                    sbJson.append(getJsonWrite(field, nbFields++));
+                    jsonNames.append((jsonNames.length() == 0 ? "" : ", ") + "\"" + field.getName().trim() + "\"");
+                    if (!field.isExtension()) {
+                        extraCrcBuffer = extraCrcBuffer + type.getCType() + " " + field.getName() + " ";
+                        if (type.isArray) {
+                            extraCrcBuffer = extraCrcBuffer + (char) type.arrayLenth;
+                        }
                     }
                 }
                 writer.print("    length = " + fieldLen + ";\n}\n\n");
                 writer.print(fieldWrite.toString());
                 int extra_crc = MAVLinkCRC.crc_calculate(MAVLinkCRC.stringToByte(extraCrcBuffer));
                 int magicNumber = (extra_crc & 0x00FF) ^ ((extra_crc >> 8 & 0x00FF));
-                MAVLINK_MESSAGE_CRCS[message.getId()] = magicNumber;
+                if (message.getId() < extraCrcs.length) {
+                    extraCrcs[message.getId()] = magicNumber;
+                }
+                messageCrcs.put(Integer.valueOf(message.getId()), Integer.valueOf(magicNumber));
+                String crcExtra = "IMAVLinkCRC.MAVLINK_MESSAGE_CRCS[messageType]";
+                if (mavlink2) {
+                    writer.print("  /**\n   * Extra crc of the message\n   */\n");
+                    writer.print("  public static final int MAVLINK_CRC_EXTRA = " + magicNumber + ";\n");
+                    crcExtra = "MAVLINK_CRC_EXTRA";
+                }
+                writer.print("  /**\n   * Decoder of the message for MAVLinkMessageFactory\n   */\n");
+                writer.print("  public static final MAVLinkMessageDecoder DECODER = new MAVLinkMessageDecoder(" + id + ", " + fieldLen + ", "
+                             + magicNumber + ") {\n");
+                writer.print("    public MAVLinkMessage newMessage(int sysId, int componentId) {\n");
+                writer.print("      return new " + className + "(sysId, componentId);\n    }\n  };\n");
+                // MAVLink 2 header has 4 more bytes : incompat and compat flags and 24 bits message id
+                int headerLen = mavlink2 ? 10 : 6;
 
                 writer.print("/**\n");
                 writer.print(" * Decode message with raw data\n");
@@ -378,14 +647,58 @@ public class MAVLinkGenerator {
                     writer.print("public void decode(ByteBuffer dis) throws IOException {\n");
                 }
 
+                writer.print(sbResetStrings.toString());
                 writer.print(sbRead.toString());
                 writer.print("}\n");
+                if (absoluteDecode) {
+                    writer.print("/**\n");
+                    writer.print(" * Decode message with raw data stored in buf at offset, without any stream\n");
+                    writer.print(" */\n");
+                    writer.print("public void decode(byte[] buf, int offset) {\n");
+                    writer.print(sbResetStrings.toString());
+                    writer.print(sbReadAbsolute.toString());
+                    writer.print("}\n");
+                }
 
+                if (memorySegment) {
+                    writer.print("/**\n");
+                    writer.print(" * Decode message with raw data stored off-heap in seg at offset\n");
+                    writer.print(" */\n");
+                    writer.print("public void decode(MemorySegment seg, long offset) {\n");
+                    writer.print(sbResetStrings.toString());
+                    writer.print(sbReadSegment.toString());
+                    writer.print("}\n");
+                    writer.print("/**\n");
+                    writer.print(" * Encode message in place in seg at position, with given sequence\n");
+                    writer.print(" * @return number of bytes written\n");
+                    writer.print(" */\n");
+                    writer.print("public int encodeTo(MemorySegment seg, long position, int sequence) {\n");
+                    writer.print(getSegmentHeaderWrite());
+                    writer.print("  long offset = position+" + headerLen + ";\n");
+                    writer.print(sbWriteSegment.toString());
+                    if (mavlink2) {
+                        writer.print("  int len = " + fieldLen + ";\n");
+                        writer.print("  while (len > 1 && seg.get(MAVLinkLayouts.BYTE, offset+len-1) == 0) len--;\n");
+                        writer.print("  seg.set(MAVLinkLayouts.BYTE, position+1, (byte) len);\n");
+                    }
+                    else {
+                        writer.print("  int len = " + fieldLen + ";\n");
+                    }
+                    writer.print("  int crc = MAVLinkCRC.crc_init();\n");
+                    writer.print("  for (long i=position+1; i<offset+len; i++) {\n");
+                    writer.print("    crc = MAVLinkCRC.crc_accumulate(seg.get(MAVLinkLayouts.BYTE, i), crc);\n  }\n");
+                    if (useExtraByte) {
+                        writer.print("  crc = MAVLinkCRC.crc_accumulate((byte) " + crcExtra + ", crc);\n");
+                    }
+                    writer.print("  seg.set(MAVLinkLayouts.BYTE, offset+len, (byte) (crc & 0x00FF));\n");
+                    writer.print("  seg.set(MAVLinkLayouts.BYTE, offset+len+1, (byte) ((crc >> 8) & 0x00FF));\n");
+                    writer.print("  return " + (headerLen + 2) + "+len;\n}\n");
+                }
                 writer.print("/**\n");
                 writer.print(" * Encode message with raw data and other informations\n");
                 writer.print(" */\n");
                 writer.print("public byte[] encode() throws IOException {\n");
-                writer.print("  byte[] buffer = new byte[8+" + fieldLen + "];\n");
+                writer.print("  byte[] buffer = new byte[" + (headerLen + 2) + "+" + fieldLen + "];\n");
                 if (forEmbeddedJava) {
                     if (isLittleEndian) {
                         writer.print("   LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(new ByteArrayOutputStream());\n");
@@ -416,15 +729,26 @@ public class MAVLinkGenerator {
                 else {
                     // nothing
                 }
-                writer.print("  int crc = MAVLinkCRC.crc_calculate_encode(buffer, " + fieldLen + ");\n");
-                // Issue 1 by BoxMonster44 : Don't accumulate messageType for mavlink 0.9
-                if (useExtraByte) {
-                    writer.print("  crc = MAVLinkCRC.crc_accumulate((byte) IMAVLinkCRC.MAVLINK_MESSAGE_CRCS[messageType], crc);\n");
+                if (mavlink2) {
+                    writer.print("  int len = " + fieldLen + ";\n");
+                    writer.print("  while (len > 1 && buffer[" + (headerLen - 1) + "+len] == 0) len--;\n");
+                    writer.print("  buffer[1] = (byte) len;\n");
+                    writer.print("  int crc = MAVLinkCRC.crc_accumulate(buffer, 1, " + (headerLen - 1) + "+len, MAVLinkCRC.crc_init());\n");
+                    writer.print("  crc = MAVLinkCRC.crc_accumulate((byte) " + crcExtra + ", crc);\n");
+                    writer.print("  buffer[" + headerLen + "+len] = (byte) (crc & 0x00FF);\n");
+                    writer.print("  buffer[" + (headerLen + 1) + "+len] = (byte) ((crc >> 8) & 0x00FF);\n");
+                }
+                else {
+                    writer.print("  int crc = MAVLinkCRC.crc_calculate_encode(buffer, " + fieldLen + ");\n");
+                    // Issue 1 by BoxMonster44 : Don't accumulate messageType for mavlink 0.9
+                    if (useExtraByte) {
+                        writer.print("  crc = MAVLinkCRC.crc_accumulate((byte) " + crcExtra + ", crc);\n");
+                    }
+                    writer.print("  byte crcl = (byte) (crc & 0x00FF);\n");
+                    writer.print("  byte crch = (byte) ((crc >> 8) & 0x00FF);\n");
+                    writer.print("  buffer[" + (fieldLen + 6) + "] = crcl;\n");
+                    writer.print("  buffer[" + (fieldLen + 7) + "] = crch;\n");
                 }
-                writer.print("  byte crcl = (byte) (crc & 0x00FF);\n");
-                writer.print("  byte crch = (byte) ((crc >> 8) & 0x00FF);\n");
-                writer.print("  buffer[" + (fieldLen + 6) + "] = crcl;\n");
-                writer.print("  buffer[" + (fieldLen + 7) + "] = crch;\n");
                 if (forEmbeddedJava) {
                     if (isLittleEndian) {
                         writer.print("  dos.close();\n");
@@ -434,14 +758,107 @@ public class MAVLinkGenerator {
                         writer.print("  dos.close();\n");
                     }
                 }
+                if (mavlink2) {
+                    // Trailing zero bytes of the payload are not sent
+                    writer.print("  if (len < " + fieldLen + ") {\n");
+                    writer.print("    byte[] frame = new byte[" + (headerLen + 2) + "+len];\n");
+                    writer.print("    System.arraycopy(buffer, 0, frame, 0, frame.length);\n");
+                    writer.print("    return frame;\n  }\n");
+                }
                 writer.print("  return buffer;\n}\n");
+                writer.print("/**\n");
+                writer.print(" * Encode message in place in dos at its current position, with given sequence.\n");
+                writer.print(" * No intermediate buffer is allocated so dos can be reused for each message.\n");
+                writer.print(" * @return number of bytes written\n");
+                writer.print(" */\n");
+                writer.print("public int encodeTo(ByteBuffer dos, int sequence) {\n");
+                writer.print("  ByteOrder order = dos.order();\n");
+                writer.print("  int position = dos.position();\n");
+                // the order of the caller is restored even if dos overflows
+                writer.print("  try {\n");
+                StringBuffer sbEncodeTo = new StringBuffer();
+                if (isLittleEndian) {
+                    sbEncodeTo.append("  dos.order(ByteOrder.LITTLE_ENDIAN);\n");
+                }
+                else {
+                    sbEncodeTo.append("  dos.order(ByteOrder.BIG_ENDIAN);\n");
+                }
+                sbEncodeTo.append(sbWriteTo.toString());
+                if (mavlink2) {
+                    sbEncodeTo.append("  int len = " + fieldLen + ";\n");
+                    sbEncodeTo.append("  while (len > 1 && dos.get(position+" + (headerLen - 1) + "+len) == 0) len--;\n");
+                    sbEncodeTo.append("  dos.put(position+1, (byte) len);\n");
+                    sbEncodeTo.append("  dos.position(position+" + headerLen + "+len);\n");
+                    sbEncodeTo.append("  int crc = MAVLinkCRC.crc_accumulate(dos, position+1, " + (headerLen - 1) + "+len, MAVLinkCRC.crc_init());\n");
+                }
+                else {
+                    sbEncodeTo.append("  int crc = MAVLinkCRC.crc_accumulate(dos, position+1, " + (fieldLen + 5) + ", MAVLinkCRC.crc_init());\n");
+                }
+                if (useExtraByte) {
+                    sbEncodeTo.append("  crc = MAVLinkCRC.crc_accumulate((byte) " + crcExtra + ", crc);\n");
+                }
+                sbEncodeTo.append("  dos.put((byte) (crc & 0x00FF));\n");
+                sbEncodeTo.append("  dos.put((byte) ((crc >> 8) & 0x00FF));\n");
+                if (mavlink2) {
+                    sbEncodeTo.append("  return " + (headerLen + 2) + "+len;\n");
+                }
+                else {
+                    sbEncodeTo.append("  return " + (fieldLen + 8) + ";\n");
+                }
+                writer.print(sbEncodeTo.toString().replace("\n  ", "\n    ").replaceFirst("^  ", "    "));
+                writer.print("  }\n");
+                writer.print("  finally {\n");
+                writer.print("    dos.order(order);\n");
+                writer.print("  }\n");
+                writer.print("}\n");
+                writer.print("  private static final byte[] JSON_NAME = MAVLinkJson.bytes(\"" + message.getName() + "\");\n");
+                writer.print("  private static final byte[][] JSON_FIELDS = MAVLinkJson.prefixes(" + jsonNames + ");\n");
+                writer.print("/**\n");
+                writer.print(" * Append message fields in text, as toString\n");
+                writer.print(" */\n");
+                writer.print("public StringBuilder appendTo(StringBuilder sb) {\n");
+                writer.print("  sb.append(\"" + id + " : \");\n");
+                writer.print(sbAppend.toString());
+                writer.print("  return sb;\n}\n");
+                writer.print("/**\n");
+                writer.print(" * Write message in JSON at the current position of buf, without allocation\n");
+                writer.print(" * @return number of bytes written\n");
+                writer.print(" */\n");
+                writer.print("public int writeJson(ByteBuffer buf) {\n");
+                writer.print("  int position = buf.position();\n");
+                writer.print("  MAVLinkJson.putHeader(buf, JSON_NAME, messageType, sysId, componentId, sequence);\n");
+                writer.print(sbJson.toString());
+                writer.print("  buf.put((byte) '}');\n");
+                writer.print("  return buf.position() - position;\n}\n");
+                writer.print("/**\n");
+                writer.print(" * Compare the fields with those of other\n");
+                writer.print(" * @return mask with bit i set if field i in wire order differs, fields from index 63 share bit 63\n");
+                writer.print(" */\n");
+                writer.print("public long diffMask(" + className + " other) {\n");
+                writer.print("  long changed = 0;\n");
+                writer.print(sbDiff.toString());
+                writer.print("  return changed;\n}\n");
+                writer.print("/**\n");
+                writer.print(" * Copy header and fields of other in this message, without allocation\n");
+                writer.print(" */\n");
+                writer.print("public void copyFrom(" + className + " other) {\n");
+                writer.print("  sequence = other.sequence;\n");
+                writer.print("  sysId = other.sysId;\n");
+                writer.print("  componentId = other.componentId;\n");
+                if (mavlink2) {
+                    writer.print("  incompatFlags = other.incompatFlags;\n");
+                    writer.print("  compatFlags = other.compatFlags;\n");
+                }
+                writer.print(sbCopy.toString());
+                writer.print("}\n");
                 if (debug) {
                     writer.print("public String toString() {\n");
-                    writer.print("return \"" + id + " : \" + " + forToString + ";");
+                    writer.print("  return appendTo(new StringBuilder(" + (32 + 16 * message.getFields().size()) + ")).toString();\n");
                     writer.print("}\n");
                 }
                 writer.print("}\n");
-                forToString = "";
+                generateViewClass(message, directory, packageName, fieldLen, viewRead.toString());
+                generateColumnsClass(message, directory, packageName, fieldLen);
             }
             catch (Exception e) {
                 System.err.println("ERROR : " + e);
@@ -461,182 +878,1155 @@ public class MAVLinkGenerator {
     }
 
     /**
-     * Generate MAVLink Java Enum classes
+     * Return code in a String setting the bit of a field in changed when it differs from the field of other.
+     * Floating point values are compared by bits, so NaN is not seen as a change.
      * 
-     * @param mavlink
-     * @param targetPath
-     * @param implementations
+     * @param field
+     * @param index field index in wire order
+     * @return the code
      */
-    protected void generateEnumClass(MAVLinkData mavlink, String targetPath, Map<String, String> implementations) {
-        String packageRootName = "org.mavlink.messages";
-        String packageName = packageRootName;
-        String directory = targetPath + "/org/mavlink/messages/";
-        OutputStream output = null;
-        PrintWriter writer = null;
-
-        for (MAVLinkEnum message : mavlink.getEnums().values()) {
-            try {
-                String className = message.getName();
-                String filename = directory + className + ".java";
-                output = new FileOutputStream(filename, false);
-                writer = new PrintWriter(output);
-                writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
-                writer.print("package " + packageName + ";\n");
-                String description = message.getDescription();
-                writer.print("/**\n * Interface " + className + "\n * " + (description == null ? "" : message.getDescription().trim()) + "\n **/\n");
-                writer.print("public interface " + className + " {\n");
-                implementations.put(className.trim(), className.trim());
-                for (int j = 0; j < message.getEntries().size(); j++) {
-                    MAVLinkEntry entry = message.getEntries().get(j);
-                    writer.print("    /**\n     * " + entry.getDescription() + "\n");
-                    for (int k = 0; k < entry.getParams().size(); k++) {
-                        MAVLinkParam param = entry.getParams().get(k);
-                        writer.print("     * PARAM " + param.getIndex() + " : " + param.getComment() + "\n");
-                    }
-                    writer.print("     */\n");
-                    writer.print("    public final static int " + entry.getName() + " = " + entry.getValue() + ";\n");
-                }
-                writer.print("}\n");
-            }
-            catch (Exception e) {
-                System.err.println("ERROR : " + e);
-                e.printStackTrace();
-            }
-            finally {
-                try {
-                    writer.close();
-                    output.close();
-                }
-                catch (Exception ex) {
-                    System.err.println("ERROR : " + ex);
-                    ex.printStackTrace();
-                }
-            }
-
+    protected String getDiff(MAVLinkField field, int index) {
+        MAVLinkDataType type = field.getType();
+        String name = field.getName().trim();
+        String bit = "1L << " + Math.min(index, 63);
+        String different;
+        if (type.isArray) {
+            different = "!Arrays.equals(" + name + ", other." + name + ")";
+        }
+        else if (type.type == MAVLinkDataType.FLOAT) {
+            different = "Float.floatToIntBits(" + name + ") != Float.floatToIntBits(other." + name + ")";
+        }
+        else if (type.type == MAVLinkDataType.DOUBLE) {
+            different = "Double.doubleToLongBits(" + name + ") != Double.doubleToLongBits(other." + name + ")";
         }
+        else {
+            different = name + " != other." + name;
+        }
+        return "  if (" + different + ") {\n    changed |= " + bit + ";\n  }\n";
     }
 
     /**
-     * Generate Interface which extends all enums classes
+     * Return code in a String copying a field of other
      * 
-     * @param targetPath
-     * @param implementation
+     * @param field
+     * @return the code
      */
-    protected void generateMAVLinkClass(String targetPath, Map<String, String> implementation) {
-        String packageRootName = "org.mavlink.messages";
-        String packageName = packageRootName;
-        String directory = targetPath + "/org/mavlink/messages/";
-        OutputStream output = null;
-        PrintWriter writer = null;
-        String allImpl = "";
-        for (String impl : implementation.values()) {
-            allImpl = allImpl + impl + ",";
-        }
-        try {
-            String className = "IMAVLink";
-            String filename = directory + className + ".java";
-            output = new FileOutputStream(filename, false);
-            writer = new PrintWriter(output);
-            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
-            writer.print("package " + packageName + ";\n");
-            writer.print("/**\n * Interface " + className + "\n * Implement all constants in enums and entries \n **/\n");
-            if (implementation.size() != 0) {
-                writer.print("public interface " + className + " extends " + allImpl.substring(0, allImpl.length() - 1) + " {\n}\n");
-            }
-            else {
-                writer.print("public interface " + className + " {\n}\n");
-            }
+    protected String getCopy(MAVLinkField field) {
+        MAVLinkDataType type = field.getType();
+        String name = field.getName().trim();
+        if (!type.isArray) {
+            return "  " + name + " = other." + name + ";\n";
         }
-        catch (Exception e) {
-            System.err.println("ERROR : " + e);
-            System.err.println("allImpl : " + allImpl);
-            e.printStackTrace();
-        }
-        finally {
-            try {
-                writer.close();
-                output.close();
-            }
-            catch (Exception ex) {
-                System.err.println("ERROR : " + ex);
-                ex.printStackTrace();
-            }
+        String code = "  System.arraycopy(other." + name + ", 0, " + name + ", 0, " + type.arrayLenth + ");\n";
+        if (type.isByteChars(byteChars)) {
+            code = code + "  " + name + "String = other." + name + "String;\n";
         }
+        return code;
     }
 
     /**
-     * Generate a factory classe which generate MAVLink messages from byte array
+     * Return code in a String appending a field in text to a StringBuilder named sb
+     * 
+     * @param field
+     * @return the code
+     */
+    protected String getAppendTo(MAVLinkField field) {
+        StringBuffer sb = new StringBuffer();
+        MAVLinkDataType type = field.getType();
+        String name = field.getName();
+        sb.append("  sb.append(\"  " + name.trim() + "=\");\n");
+        if (type.isByteChars(byteChars)) {
+            sb.append("  for (int i=0; i<" + type.arrayLenth + " && " + name + "[i] != 0; i++) {\n");
+            sb.append("    sb.append((char) (" + name + "[i] & 0x00FF));\n  }\n");
+        }
+        else if (type.isArray && type.type == MAVLinkDataType.CHAR) {
+            sb.append("  for (int i=0; i<" + type.arrayLenth + " && " + name + "[i] != 0; i++) {\n");
+            sb.append("    sb.append(" + name + "[i]);\n  }\n");
+        }
+        else if (type.isArray) {
+            sb.append("  sb.append('[');\n");
+            sb.append("  for (int i=0; i<" + type.arrayLenth + "; i++) {\n");
+            sb.append("    if (i > 0) sb.append(\", \");\n");
+            sb.append("    sb.append(" + name + "[i]);\n  }\n");
+            sb.append("  sb.append(']');\n");
+        }
+        else {
+            sb.append("  sb.append(" + name + ");\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return code in a String writing a field in JSON in a ByteBuffer named buf
+     * 
+     * @param field
+     * @param index
+     *            index of the field name prefix in JSON_FIELDS
+     * @return the code
+     */
+    protected String getJsonWrite(MAVLinkField field, int index) {
+        StringBuffer sb = new StringBuffer();
+        MAVLinkDataType type = field.getType();
+        String name = field.getName();
+        sb.append("  buf.put(JSON_FIELDS[" + index + "]);\n");
+        if (type.isArray && type.type == MAVLinkDataType.CHAR) {
+            sb.append("  MAVLinkJson.putString(buf, " + name + ");\n");
+        }
+        else if (type.isArray) {
+            sb.append("  buf.put((byte) '[');\n");
+            sb.append("  for (int i=0; i<" + type.arrayLenth + "; i++) {\n");
+            sb.append("    if (i > 0) buf.put((byte) ',');\n");
+            sb.append("    " + getJsonValue(type, name + "[i]") + "\n  }\n");
+            sb.append("  buf.put((byte) ']');\n");
+        }
+        else {
+            sb.append("  " + getJsonValue(type, name) + "\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return code writing one JSON value of type in buf
+     */
+    private String getJsonValue(MAVLinkDataType type, String value) {
+        switch (type.type) {
+            case MAVLinkDataType.ARRAY:
+            case MAVLinkDataType.CHAR:
+                return "MAVLinkJson.putChar(buf, " + value + ");";
+            case MAVLinkDataType.FLOAT:
+                return "MAVLinkJson.putFloat(buf, " + value + ");";
+            case MAVLinkDataType.DOUBLE:
+                return "MAVLinkJson.putDouble(buf, " + value + ");";
+            default:
+                return "MAVLinkJson.putLong(buf, " + value + ");";
+        }
+    }
+
+    /**
+     * Return code in a String of the getters of a field in a view class.
+     * Values are read in buf at the wire position of the field in the payload.
+     * 
+     * @param field
+     * @param position position of the field in the payload
+     * @return the getters code
+     */
+    protected String getViewRead(MAVLinkField field, int position) {
+        StringBuffer sb = new StringBuffer();
+        MAVLinkDataType type = field.getType();
+        String first = "" + field.getName().charAt(0);
+        String attr = first.toUpperCase() + field.getName().substring(1);
+        String javaType = type.getJavaTypeName(type.type);
+        sb.append("  /**\n   * " + field.getDescription().trim() + "\n   */\n");
+        if (type.isArray) {
+            String offset = "offset+" + position + "+index" + (type.getTypeSize() != 1 ? "*" + type.getTypeSize() : "");
+            sb.append("  public " + javaType + " get" + attr + "(int index) {\n");
+            sb.append("    return " + type.getAbsoluteReadExpression("buf", offset, isLittleEndian) + ";\n  }\n");
+            if (type.type == MAVLinkDataType.CHAR) {
+                sb.append("  public String get" + attr + "() {\n");
+                sb.append("    StringBuffer result = new StringBuffer();\n");
+                sb.append("    for (int index=0; index<" + type.arrayLenth + "; index++) {\n");
+                sb.append("      char c = " + type.getAbsoluteReadExpression("buf", offset, isLittleEndian) + ";\n");
+                sb.append("      if (c != 0) result.append(c); else break;\n    }\n");
+                sb.append("    return result.toString();\n  }\n");
+            }
+        }
+        else {
+            sb.append("  public " + javaType + " get" + attr + "() {\n");
+            sb.append("    return " + type.getAbsoluteReadExpression("buf", "offset+" + position, isLittleEndian) + ";\n  }\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generate the flyweight view of a message, reading its fields in a frame buffer without decoding
+     * 
+     * @param message
+     * @param directory
+     * @param packageName
+     * @param length payload length
+     * @param getters code of the fields getters
+     */
+    protected void generateViewClass(MAVLinkMessage message, String directory, String packageName, int length, String getters) {
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String className = "msg_" + message.getName().toLowerCase() + "View";
+        String filename = directory + className + ".java";
+        // position of sequence in the frame, followed by sysId and componentId
+        int seqPos = mavlink2 ? 4 : 2;
+        int headerLen = mavlink2 ? 10 : 6;
+        try {
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("import org.mavlink.MAVLinkBytes;\n");
+            writer.print("/**\n * Class " + className + "\n");
+            writer.print(" * Read the fields of a " + message.getName() + " frame in place, without decoding the message.\n");
+            writer.print(" * A view can be wrapped again on each received frame.\n **/\n");
+            writer.print("public class " + className + " {\n");
+            writer.print("  /**\n   * Payload length\n   */\n");
+            writer.print("  public static final int LENGTH = " + length + ";\n");
+            writer.print("  private byte[] frame;\n");
+            writer.print("  private int start;\n");
+            writer.print("  private byte[] buf;\n");
+            writer.print("  private int offset;\n");
+            if (mavlink2) {
+                writer.print("  /**\n   * Copy of a truncated payload, completed with zeros\n   */\n");
+                writer.print("  private final byte[] padded = new byte[LENGTH];\n");
+            }
+            writer.print("/**\n");
+            writer.print(" * Wrap the frame starting at offset in buffer\n");
+            writer.print(" */\n");
+            writer.print("public " + className + " wrap(byte[] buffer, int offset) {\n");
+            writer.print("    this.frame = buffer;\n");
+            writer.print("    this.start = offset;\n");
+            writer.print("    this.buf = buffer;\n");
+            writer.print("    this.offset = offset + " + headerLen + ";\n");
+            if (mavlink2) {
+                writer.print("    int len = buffer[offset + 1] & 0x00FF;\n");
+                writer.print("    if (len < LENGTH) {\n");
+                writer.print("      System.arraycopy(buffer, this.offset, padded, 0, len);\n");
+                writer.print("      for (int i=len; i<LENGTH; i++) {\n        padded[i] = 0;\n      }\n");
+                writer.print("      this.buf = padded;\n");
+                writer.print("      this.offset = 0;\n    }\n");
+            }
+            writer.print("    return this;\n");
+            writer.print("  }\n");
+            writer.print("  public int getSequence() {\n");
+            writer.print("    return frame[start+" + seqPos + "] & 0x00FF;\n  }\n");
+            writer.print("  public int getSysId() {\n");
+            writer.print("    return frame[start+" + (seqPos + 1) + "] & 0x00FF;\n  }\n");
+            writer.print("  public int getComponentId() {\n");
+            writer.print("    return frame[start+" + (seqPos + 2) + "] & 0x00FF;\n  }\n");
+            writer.print(getters);
+            writer.print("}\n");
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Generate the columns of a message : one primitive array per field, filled by rows from frames.
+     * Array fields are stored row after row in one array of capacity * array length values.
+     * 
+     * @param message
+     * @param directory
+     * @param packageName
+     * @param length payload length
+     */
+    protected void generateColumnsClass(MAVLinkMessage message, String directory, String packageName, int length) {
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String className = "msg_" + message.getName().toLowerCase() + "Columns";
+        String filename = directory + className + ".java";
+        int seqPos = mavlink2 ? 4 : 2;
+        int headerLen = mavlink2 ? 10 : 6;
+        StringBuffer declarations = new StringBuffer();
+        StringBuffer allocations = new StringBuffer();
+        StringBuffer copies = new StringBuffer();
+        StringBuffer headerReads = new StringBuffer();
+        StringBuffer reads = new StringBuffer();
+        StringBuffer getters = new StringBuffer();
+        String[] headers = { "sequence", "sysId", "componentId" };
+        for (int i = 0; i < headers.length; i++) {
+            declarations.append("  public int[] " + headers[i] + ";\n");
+            allocations.append("    " + headers[i] + " = new int[capacity];\n");
+            copies.append("    " + headers[i] + " = Arrays.copyOf(" + headers[i] + ", capacity);\n");
+            headerReads.append("    columns." + headers[i] + "[row] = buf[offset+" + (seqPos + i) + "] & 0x00FF;\n");
+        }
+        int position = 0;
+        for (MAVLinkField field : message.getFields()) {
+            if (field.isExtension() && !mavlink2) {
+                continue;
+            }
+            MAVLinkDataType type = field.getType();
+            String name = field.getName().trim();
+            String javaType = type.isByteChars(byteChars) ? "byte" : type.getJavaTypeName(type.type);
+            String size = type.isArray ? "capacity*" + type.arrayLenth : "capacity";
+            declarations.append("  /**\n   * " + field.getDescription().trim() + "\n   */\n");
+            declarations.append("  public " + javaType + "[] " + name + ";\n");
+            allocations.append("    " + name + " = new " + javaType + "[" + size + "];\n");
+            copies.append("    " + name + " = Arrays.copyOf(" + name + ", " + size + ");\n");
+            if (type.isByteChars(byteChars)) {
+                reads.append("    System.arraycopy(buf, offset+" + position + ", columns." + name + ", row*" + type.arrayLenth + ", "
+                             + type.arrayLenth + ");\n");
+            }
+            else if (type.isArray) {
+                String offset = "offset+" + position + "+i" + (type.getTypeSize() != 1 ? "*" + type.getTypeSize() : "");
+                reads.append("    for (int i=0; i<" + type.arrayLenth + "; i++) {\n");
+                reads.append("      columns." + name + "[row*" + type.arrayLenth + "+i] = " + type.getAbsoluteReadExpression("buf", offset, isLittleEndian)
+                             + ";\n    }\n");
+            }
+            else {
+                reads.append("    columns." + name + "[row] = " + type.getAbsoluteReadExpression("buf", "offset+" + position, isLittleEndian) + ";\n");
+            }
+            if (type.isArray && type.type == MAVLinkDataType.CHAR) {
+                String attr = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                getters.append("  public String get" + attr + "(int row) {\n");
+                getters.append("    int start = row*" + type.arrayLenth + ";\n");
+                getters.append("    int len = 0;\n");
+                getters.append("    while (len < " + type.arrayLenth + " && " + name + "[start+len] != 0) len++;\n");
+                if (type.isByteChars(byteChars)) {
+                    getters.append("    char[] tmp = new char[len];\n");
+                    getters.append("    for (int i=0; i<len; i++) {\n      tmp[i] = (char) (" + name + "[start+i] & 0x00FF);\n    }\n");
+                    getters.append("    return new String(tmp);\n  }\n");
+                }
+                else {
+                    getters.append("    return new String(" + name + ", start, len);\n  }\n");
+                }
+            }
+            position += type.getLengthType();
+        }
+        try {
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("import java.util.Arrays;\n");
+            writer.print("import org.mavlink.MAVLinkBytes;\n");
+            writer.print("/**\n * Class " + className + "\n");
+            writer.print(" * Columns of " + message.getName() + " messages : one primitive array per field, indexed by row.\n");
+            writer.print(" * Array fields of row r are stored from r * array length.\n **/\n");
+            writer.print("public class " + className + " {\n");
+            writer.print("  /**\n   * Payload length\n   */\n");
+            writer.print("  public static final int LENGTH = " + length + ";\n");
+            writer.print("  /**\n   * Number of rows filled by add\n   */\n");
+            writer.print("  public int rows;\n");
+            writer.print("  /**\n   * Number of rows allocated\n   */\n");
+            writer.print("  public int capacity;\n");
+            writer.print(declarations.toString());
+            if (mavlink2) {
+                writer.print("  /**\n   * Copy of a truncated payload, completed with zeros\n   */\n");
+                writer.print("  private final byte[] padded = new byte[LENGTH];\n");
+            }
+            writer.print("  public " + className + "(int capacity) {\n");
+            writer.print("    this.capacity = capacity;\n");
+            writer.print(allocations.toString());
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Grow the columns to hold at least minCapacity rows\n");
+            writer.print(" */\n");
+            writer.print("  public void ensureCapacity(int minCapacity) {\n");
+            writer.print("    if (minCapacity <= capacity) {\n      return;\n    }\n");
+            writer.print("    capacity = Math.max(minCapacity, capacity + (capacity >> 1) + 1);\n");
+            writer.print(copies.toString());
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Decode the frame starting at offset in buf in a new row\n");
+            writer.print(" * @return index of the row\n");
+            writer.print(" */\n");
+            writer.print("  public int add(byte[] buf, int offset) {\n");
+            writer.print("    ensureCapacity(rows + 1);\n");
+            writer.print("    decodeInto(this, rows, buf, offset);\n");
+            writer.print("    return rows++;\n");
+            writer.print("  }\n");
+            writer.print("  public void clear() {\n");
+            writer.print("    rows = 0;\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Decode the frame starting at offset in buf in row of columns\n");
+            writer.print(" */\n");
+            writer.print("  public static void decodeInto(" + className + " columns, int row, byte[] buf, int offset) {\n");
+            writer.print(headerReads.toString());
+            if (mavlink2) {
+                writer.print("    int len = buf[offset + 1] & 0x00FF;\n");
+                writer.print("    offset += " + headerLen + ";\n");
+                writer.print("    if (len < LENGTH) {\n");
+                writer.print("      System.arraycopy(buf, offset, columns.padded, 0, len);\n");
+                writer.print("      Arrays.fill(columns.padded, len, LENGTH, (byte) 0);\n");
+                writer.print("      buf = columns.padded;\n");
+                writer.print("      offset = 0;\n    }\n");
+            }
+            else {
+                writer.print("    offset += " + headerLen + ";\n");
+            }
+            writer.print(reads.toString());
+            writer.print("  }\n");
+            writer.print(getters.toString());
+            writer.print("}\n");
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Return code in a String to write the MAVLink header in a ByteBuffer named dos
+     * 
+     * @return the header writer code
+     */
+    protected String getByteBufferHeaderWrite() {
+        StringBuffer sb = new StringBuffer();
+        for (String value : getHeaderValues()) {
+            sb.append("  dos.put(" + value + ");\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return code in a String to write the MAVLink header in a MemorySegment named seg at position
+     * 
+     * @return the header writer code
+     */
+    protected String getSegmentHeaderWrite() {
+        StringBuffer sb = new StringBuffer();
+        List<String> values = getHeaderValues();
+        for (int i = 0; i < values.size(); i++) {
+            sb.append("  seg.set(MAVLinkLayouts.BYTE, position+" + i + ", " + values.get(i) + ");\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return code of each byte of the MAVLink header
+     */
+    protected List<String> getHeaderValues() {
+        List<String> values = new ArrayList<String>();
+        if (mavlink2) {
+            values.add("(byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V20);
+            values.add("(byte)(length & 0x00FF)");
+            values.add("(byte)(incompatFlags & 0x00FF)");
+            values.add("(byte)(compatFlags & 0x00FF)");
+        }
+        //Issue 1 by BoxMonster44 : use correct packet start for mavlink 0.9
+        else if (useExtraByte) {
+            values.add("(byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V10);
+            values.add("(byte)(length & 0x00FF)");
+        }
+        else {
+            values.add("(byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V09);
+            values.add("(byte)(length & 0x00FF)");
+        }
+        values.add("(byte)(sequence & 0x00FF)");
+        values.add("(byte)(sysId & 0x00FF)");
+        values.add("(byte)(componentId & 0x00FF)");
+        values.add("(byte)(messageType & 0x00FF)");
+        if (mavlink2) {
+            values.add("(byte)((messageType >> 8) & 0x00FF)");
+            values.add("(byte)((messageType >> 16) & 0x00FF)");
+        }
+        return values;
+    }
+
+    /**
+     * Return code in a String to write the MAVLink header in a data output stream named dos
+     * 
+     * @return the header writer code
+     */
+    protected String getStreamHeaderWrite() {
+        StringBuffer sb = new StringBuffer();
+        if (mavlink2) {
+            sb.append("  dos.writeByte((byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V20 + ");\n");
+            sb.append("  dos.writeByte(length & 0x00FF);\n");
+            sb.append("  dos.writeByte(incompatFlags & 0x00FF);\n");
+            sb.append("  dos.writeByte(compatFlags & 0x00FF);\n");
+        }
+        //Issue 1 by BoxMonster44 : use correct packet start for mavlink 0.9
+        else if (useExtraByte) {
+            sb.append("  dos.writeByte((byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V10 + ");\n");
+            sb.append("  dos.writeByte(length & 0x00FF);\n");
+        }
+        else {
+            sb.append("  dos.writeByte((byte)" + IMAVLinkMessage.STRING_MAVPROT_PACKET_START_V09 + ");\n");
+            sb.append("  dos.writeByte(length & 0x00FF);\n");
+        }
+        sb.append("  dos.writeByte(sequence & 0x00FF);\n");
+        sb.append("  dos.writeByte(sysId & 0x00FF);\n");
+        sb.append("  dos.writeByte(componentId & 0x00FF);\n");
+        sb.append("  dos.writeByte(messageType & 0x00FF);\n");
+        if (mavlink2) {
+            sb.append("  dos.writeByte((messageType >> 8) & 0x00FF);\n");
+            sb.append("  dos.writeByte((messageType >> 16) & 0x00FF);\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * MAVLink 1 can only carry messages with an id lower than 256
+     * 
+     * @param message
+     * @return true if a class is generated for the message
+     */
+    protected boolean isGenerated(MAVLinkMessage message) {
+        return mavlink2 || message.getId() < extraCrcs.length;
+    }
+
+    /**
+     * Return the full payload length of a message, with extensions in MAVLink 2
+     * 
+     * @param message
+     * @return payload length
+     */
+    protected int getPayloadLength(MAVLinkMessage message) {
+        int length = 0;
+        for (MAVLinkField field : message.getFields()) {
+            if (!field.isExtension() || mavlink2) {
+                length += field.getType().getLengthType();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Generate MAVLink Java Enum classes
+     * 
+     * @param mavlink
+     * @param targetPath
+     * @param implementations
+     */
+    protected void generateEnumClass(MAVLinkData mavlink, String targetPath, Map<String, String> implementations) {
+        String packageRootName = "org.mavlink.messages";
+        String packageName = packageRootName;
+        String directory = targetPath + "/org/mavlink/messages/";
+        OutputStream output = null;
+        PrintWriter writer = null;
+
+        for (MAVLinkEnum message : mavlink.getEnums().values()) {
+            try {
+                String className = message.getName();
+                String filename = directory + className + ".java";
+                output = openOutput(filename);
+                writer = new PrintWriter(output);
+                writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+                writer.print("package " + packageName + ";\n");
+                String description = message.getDescription();
+                writer.print("/**\n * Interface " + className + "\n * " + (description == null ? "" : message.getDescription().trim()) + "\n **/\n");
+                writer.print("public interface " + className + " {\n");
+                implementations.put(className.trim(), className.trim());
+                for (int j = 0; j < message.getEntries().size(); j++) {
+                    MAVLinkEntry entry = message.getEntries().get(j);
+                    writer.print("    /**\n     * " + entry.getDescription() + "\n");
+                    for (int k = 0; k < entry.getParams().size(); k++) {
+                        MAVLinkParam param = entry.getParams().get(k);
+                        writer.print("     * PARAM " + param.getIndex() + " : " + param.getComment() + "\n");
+                    }
+                    writer.print("     */\n");
+                    writer.print("    public final static int " + entry.getName() + " = " + entry.getValue() + ";\n");
+                }
+                writer.print("}\n");
+            }
+            catch (Exception e) {
+                System.err.println("ERROR : " + e);
+                e.printStackTrace();
+            }
+            finally {
+                try {
+                    writer.close();
+                    output.close();
+                }
+                catch (Exception ex) {
+                    System.err.println("ERROR : " + ex);
+                    ex.printStackTrace();
+                }
+            }
+
+        }
+    }
+
+    /**
+     * Generate Interface which extends all enums classes
+     * 
+     * @param targetPath
+     * @param implementation
+     */
+    protected void generateMAVLinkClass(String targetPath, Map<String, String> implementation) {
+        String packageRootName = "org.mavlink.messages";
+        String packageName = packageRootName;
+        String directory = targetPath + "/org/mavlink/messages/";
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String allImpl = "";
+        for (String impl : implementation.values()) {
+            allImpl = allImpl + impl + ",";
+        }
+        try {
+            String className = "IMAVLink";
+            String filename = directory + className + ".java";
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("/**\n * Interface " + className + "\n * Implement all constants in enums and entries \n **/\n");
+            if (implementation.size() != 0) {
+                writer.print("public interface " + className + " extends " + allImpl.substring(0, allImpl.length() - 1) + " {\n}\n");
+            }
+            else {
+                writer.print("public interface " + className + " {\n}\n");
+            }
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            System.err.println("allImpl : " + allImpl);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Generate a factory classe which generate MAVLink messages from byte array
+     * 
+     * @param mavlink
+     * @param targetPath
+     */
+    protected void generateFactoryClass(MAVLinkData mavlink, String targetPath) {
+        String packageRootName = "org.mavlink.messages";
+        String packageName = packageRootName;
+        String directory = targetPath + "/org/mavlink/messages/";
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String className = "MAVLinkMessageFactory";
+        String filename = directory + className + ".java";
+        try {
+            File file = new File(directory);
+            file.mkdirs();
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            // Write Header
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("import " + packageRootName + ".MAVLinkMessage;\n");
+            writer.print("import org.mavlink.IMAVLinkMessage;\n");
+            writer.print("import java.io.IOException;\n");
+            if (forEmbeddedJava) {
+                if (isLittleEndian) {
+                    writer.print("import org.mavlink.io.LittleEndianDataInputStream;\n");
+                    writer.print("import java.io.ByteArrayInputStream;\n");
+                }
+                else {
+                    writer.print("import java.io.DataInputStream;\n");
+                    writer.print("import java.io.ByteArrayInputStream;\n");
+                }
+            }
+            else {
+                writer.print("import java.nio.ByteBuffer;\n");
+                writer.print("import java.nio.ByteOrder;\n");
+            }
+            writer.print(imports);
+            int maxId = 0;
+            for (MAVLinkMessage message : mavlink.getMessages().values()) {
+                if (isGenerated(message) && message.getId() > maxId) {
+                    maxId = message.getId();
+                }
+            }
+            writer.print("import java.util.concurrent.atomic.AtomicLong;\n");
+            if (memorySegment) {
+                writer.print("import java.lang.foreign.MemorySegment;\n");
+            }
+            writer.print("/**\n * Class MAVLinkMessageFactory\n * Generate MAVLink message classes from byte array\n");
+            writer.print(" * Decoders are found in a table indexed by message id, filled on first use of each id\n **/\n");
+            writer.print("public class MAVLinkMessageFactory implements IMAVLinkMessage, IMAVLinkMessageID {\n");
+            writer.print("  /**\n   * Decoders by pages of 256 message ids\n   */\n");
+            writer.print("  private static final MAVLinkMessageDecoder[][] DECODERS = new MAVLinkMessageDecoder[" + ((maxId >>> 8) + 1) + "][];\n");
+            writer.print("  /**\n   * Marker for ids which are not in the dialect\n   */\n");
+            writer.print("  private static final MAVLinkMessageDecoder UNKNOWN = new MAVLinkMessageDecoder(-1, -1, -1) {\n");
+            writer.print("    public MAVLinkMessage newMessage(int sysId, int componentId) {\n");
+            writer.print("      return null;\n    }\n  };\n");
+            writer.print("  /**\n   * Number of messages received with an unknown id\n   */\n");
+            writer.print("  private static final AtomicLong unknownMessages = new AtomicLong();\n");
+            writer.print("  /**\n   * True if decoded messages are taken from per thread pools\n   */\n");
+            writer.print("  private static volatile boolean recycling = false;\n");
+            if (mavlink2) {
+                writer.print("  /**\n   * Payload truncated by MAVLink 2 padded with zeros, one per thread to decode without allocation\n   */\n");
+                writer.print("  private static final ThreadLocal<byte[]> PADDED = new ThreadLocal<byte[]>() {\n");
+                writer.print("    protected byte[] initialValue() {\n");
+                writer.print("      return new byte[255];\n    }\n  };\n");
+                if (memorySegment) {
+                    writer.print("  private static final ThreadLocal<MemorySegment> PADDED_SEGMENT = new ThreadLocal<MemorySegment>() {\n");
+                    writer.print("    protected MemorySegment initialValue() {\n");
+                    writer.print("      return MemorySegment.ofArray(PADDED.get());\n    }\n  };\n");
+                }
+            }
+            writer.print("/**\n");
+            writer.print(" * Return the decoder of a message id, with its payload length and extra crc\n");
+            writer.print(" * @return the decoder or null if the id is unknown\n");
+            writer.print(" */\n");
+            writer.print("public static MAVLinkMessageDecoder getDecoder(int msgid) {\n");
+            writer.print("    int index = msgid >>> 8;\n");
+            writer.print("    if (index >= DECODERS.length) {\n");
+            writer.print("      return null;\n    }\n");
+            writer.print("    MAVLinkMessageDecoder[] page = DECODERS[index];\n");
+            writer.print("    if (page == null) {\n");
+            writer.print("      page = new MAVLinkMessageDecoder[256];\n");
+            writer.print("      DECODERS[index] = page;\n    }\n");
+            writer.print("    MAVLinkMessageDecoder decoder = page[msgid & 0x00FF];\n");
+            writer.print("    if (decoder == null) {\n");
+            writer.print("      decoder = createDecoder(msgid);\n");
+            writer.print("      page[msgid & 0x00FF] = decoder;\n    }\n");
+            writer.print("    return decoder == UNKNOWN ? null : decoder;\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Called once per message id to fill the decoders table\n");
+            writer.print(" */\n");
+            writer.print("private static MAVLinkMessageDecoder createDecoder(int msgid) {\n");
+            writer.print("    switch(msgid) {\n");
+            for (MAVLinkMessage message : mavlink.getMessages().values()) {
+                if (!isGenerated(message)) {
+                    continue;
+                }
+                String msgClassName = "msg_" + message.getName().toLowerCase();
+                String id = MAVLINK_MSG + "_ID_" + message.getName();
+                writer.print("  case " + id + ":\n");
+                writer.print("      return " + msgClassName + ".DECODER;\n");
+            }
+            writer.print("  default:\n");
+            writer.print("      return UNKNOWN;\n");
+            writer.print("    }\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return number of messages received with an unknown id\n");
+            writer.print(" */\n");
+            writer.print("public static long getUnknownMessages() {\n");
+            writer.print("    return unknownMessages.get();\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Enable or disable recycling of decoded messages.\n");
+            writer.print(" * When enabled, getMessage returns a message released before by the same thread if any,\n");
+            writer.print(" * and the consumer must call release when it does not use the message anymore.\n");
+            writer.print(" */\n");
+            writer.print("public static void setRecycling(boolean enable) {\n");
+            writer.print("    recycling = enable;\n");
+            writer.print("  }\n");
+            writer.print("public static boolean isRecycling() {\n");
+            writer.print("    return recycling;\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Give back a decoded message to the pool of the current thread when recycling is enabled\n");
+            writer.print(" */\n");
+            writer.print("public static void release(MAVLinkMessage msg) {\n");
+            writer.print("    if (!recycling || msg == null) {\n");
+            writer.print("      return;\n    }\n");
+            writer.print("    MAVLinkMessageDecoder decoder = getDecoder(msg.messageType);\n");
+            writer.print("    if (decoder != null) {\n");
+            writer.print("      decoder.release(msg);\n    }\n");
+            writer.print("  }\n");
+            if (mavlink2) {
+                writer.print("/**\n");
+                writer.print(" * Copy a payload truncated by MAVLink 2 in the padded array of the current thread, zero filled up to the message size.\n");
+                writer.print(" * The array is only valid until the next call in the same thread.\n");
+                writer.print(" */\n");
+                writer.print("private static byte[] pad(byte[] buf, int offset, int length, int size) {\n");
+                writer.print("    byte[] payload = PADDED.get();\n");
+                writer.print("    System.arraycopy(buf, offset, payload, 0, length);\n");
+                writer.print("    for (int i = length; i < size; i++) {\n");
+                writer.print("      payload[i] = 0;\n    }\n");
+                writer.print("    return payload;\n");
+                writer.print("  }\n");
+            }
+            if (absoluteDecode && mavlink2) {
+                writer.print("public static MAVLinkMessage getMessage(int msgid, int sysId, int componentId, byte[] rawData) throws IOException {\n");
+                writer.print("    return getMessage(msgid, sysId, componentId, rawData, 0, rawData.length);\n");
+                writer.print("  }\n");
+                writer.print("/**\n");
+                writer.print(" * Decode the payload of length bytes stored at offset in buf, generally the frame buffer of the reader.\n");
+                writer.print(" * The payload is only copied when it has been truncated by the sender\n");
+                writer.print(" */\n");
+                writer.print("public static MAVLinkMessage getMessage(int msgid, int sysId, int componentId, byte[] buf, int offset, int length) throws IOException {\n");
+            }
+            else if (absoluteDecode) {
+                writer.print("public static MAVLinkMessage getMessage(int msgid, int sysId, int componentId, byte[] rawData) throws IOException {\n");
+                writer.print("    return getMessage(msgid, sysId, componentId, rawData, 0);\n");
+                writer.print("  }\n");
+                writer.print("/**\n");
+                writer.print(" * Decode the payload stored at offset in buf, generally the frame buffer of the reader, without copy\n");
+                writer.print(" */\n");
+                writer.print("public static MAVLinkMessage getMessage(int msgid, int sysId, int componentId, byte[] buf, int offset) throws IOException {\n");
+            }
+            else {
+                writer.print("public static MAVLinkMessage getMessage(int msgid, int sysId, int componentId, byte[] rawData) throws IOException {\n");
+            }
+            writer.print("    MAVLinkMessageDecoder decoder = getDecoder(msgid);\n");
+            writer.print("    if (decoder == null) {\n");
+            writer.print("      unknownMessages.incrementAndGet();\n");
+            writer.print("      return null;\n    }\n");
+            writer.print("    MAVLinkMessage msg = recycling ? decoder.obtain(sysId, componentId) : decoder.newMessage(sysId, componentId);\n");
+            writer.print(getFactoryDecode());
+            writer.print("    return msg;\n");
+            writer.print("  }\n");
+            if (memorySegment) {
+                writer.print("/**\n");
+                writer.print(" * Decode the payload of length bytes stored off-heap at offset in seg, without copy on the heap.\n");
+                writer.print(" * Only a payload truncated by a MAVLink 2 sender is copied.\n");
+                writer.print(" */\n");
+                writer.print("public static MAVLinkMessage getMessage(int msgid, int sysId, int componentId, MemorySegment seg, long offset, int length) {\n");
+                writer.print("    MAVLinkMessageDecoder decoder = getDecoder(msgid);\n");
+                writer.print("    if (decoder == null) {\n");
+                writer.print("      unknownMessages.incrementAndGet();\n");
+                writer.print("      return null;\n    }\n");
+                writer.print("    MAVLinkMessage msg = recycling ? decoder.obtain(sysId, componentId) : decoder.newMessage(sysId, componentId);\n");
+                writer.print("    if (length < decoder.length) {\n");
+                writer.print("      MemorySegment payload = PADDED_SEGMENT.get();\n");
+                writer.print("      MemorySegment.copy(seg, offset, payload, 0, length);\n");
+                writer.print("      byte[] padded = PADDED.get();\n");
+                writer.print("      for (int i = length; i < decoder.length; i++) {\n");
+                writer.print("        padded[i] = 0;\n      }\n");
+                writer.print("      msg.decode(payload, 0);\n    }\n");
+                writer.print("    else {\n");
+                writer.print("      msg.decode(seg, offset);\n    }\n");
+                writer.print("    return msg;\n");
+                writer.print("  }\n");
+            }
+            writer.print("}\n");
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Return code in a String decoding msg in getMessage of the factory
+     * 
+     * @return the decode code
+     */
+    protected String getFactoryDecode() {
+        StringBuffer sb = new StringBuffer();
+        if (absoluteDecode && mavlink2) {
+            sb.append("    if (length < decoder.length) {\n");
+            sb.append("      msg.decode(pad(buf, offset, length, decoder.length), 0);\n    }\n");
+            sb.append("    else {\n");
+            sb.append("      msg.decode(buf, offset);\n    }\n");
+        }
+        else if (absoluteDecode) {
+            sb.append("    msg.decode(buf, offset);\n");
+        }
+        else {
+            if (mavlink2) {
+                sb.append("    if (rawData.length < decoder.length) {\n");
+                sb.append("      rawData = pad(rawData, 0, rawData.length, decoder.length);\n    }\n");
+            }
+            if (forEmbeddedJava && isLittleEndian) {
+                sb.append("    msg.decode(new LittleEndianDataInputStream(new ByteArrayInputStream(rawData)));\n");
+            }
+            else if (forEmbeddedJava) {
+                sb.append("    msg.decode(new DataInputStream(new ByteArrayInputStream(rawData)));\n");
+            }
+            else if (isLittleEndian) {
+                sb.append("    msg.decode(ByteBuffer.wrap(rawData).order(ByteOrder.LITTLE_ENDIAN));\n");
+            }
+            else {
+                sb.append("    msg.decode(ByteBuffer.wrap(rawData).order(ByteOrder.BIG_ENDIAN));\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generate the class of decoders used by MAVLinkMessageFactory table
      * 
-     * @param mavlink
      * @param targetPath
      */
-    protected void generateFactoryClass(MAVLinkData mavlink, String targetPath) {
+    protected void generateDecoderClass(String targetPath) {
         String packageRootName = "org.mavlink.messages";
         String packageName = packageRootName;
         String directory = targetPath + "/org/mavlink/messages/";
         OutputStream output = null;
         PrintWriter writer = null;
-        String className = "MAVLinkMessageFactory";
+        String className = "MAVLinkMessageDecoder";
         String filename = directory + className + ".java";
         try {
             File file = new File(directory);
             file.mkdirs();
-            output = new FileOutputStream(filename, false);
+            output = openOutput(filename);
             writer = new PrintWriter(output);
             // Write Header
             writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
             writer.print("package " + packageName + ";\n");
-            writer.print("import " + packageRootName + ".MAVLinkMessage;\n");
-            writer.print("import org.mavlink.IMAVLinkMessage;\n");
-            writer.print("import java.io.IOException;\n");
-            if (forEmbeddedJava) {
-                if (isLittleEndian) {
-                    writer.print("import org.mavlink.io.LittleEndianDataInputStream;\n");
-                    writer.print("import java.io.ByteArrayInputStream;\n");
-                }
-                else {
-                    writer.print("import java.io.DataInputStream;\n");
-                    writer.print("import java.io.ByteArrayInputStream;\n");
-                }
+            writer.print("/**\n * Class MAVLinkMessageDecoder\n * Create a MAVLink message class for an id, with expected payload length and extra crc\n **/\n");
+            writer.print("public abstract class MAVLinkMessageDecoder {\n");
+            writer.print("  /**\n   * Message id\n   */\n");
+            writer.print("  public final int msgid;\n");
+            writer.print("  /**\n   * Expected payload length\n   */\n");
+            writer.print("  public final int length;\n");
+            writer.print("  /**\n   * Extra crc of the message\n   */\n");
+            writer.print("  public final int crcExtra;\n");
+            writer.print("  public MAVLinkMessageDecoder(int msgid, int length, int crcExtra) {\n");
+            writer.print("    this.msgid = msgid;\n");
+            writer.print("    this.length = length;\n");
+            writer.print("    this.crcExtra = crcExtra;\n");
+            writer.print("  }\n");
+            writer.print("  /**\n   * Create a new message to decode\n   */\n");
+            writer.print("  public abstract MAVLinkMessage newMessage(int sysId, int componentId);\n");
+            writer.print("  /**\n   * Maximum number of released messages kept by each thread\n   */\n");
+            writer.print("  public static final int POOL_SIZE = 4;\n");
+            writer.print("  /**\n   * Released messages of a thread\n   */\n");
+            writer.print("  private static final class Pool {\n");
+            writer.print("    final MAVLinkMessage[] messages = new MAVLinkMessage[POOL_SIZE];\n");
+            writer.print("    int size = 0;\n");
+            writer.print("  }\n");
+            writer.print("  private final ThreadLocal<Pool> pools = new ThreadLocal<Pool>() {\n");
+            writer.print("    protected Pool initialValue() {\n");
+            writer.print("      return new Pool();\n    }\n  };\n");
+            writer.print("  /**\n");
+            writer.print("   * Return a message released by the current thread, or a new one if there is none\n");
+            writer.print("   */\n");
+            writer.print("  public MAVLinkMessage obtain(int sysId, int componentId) {\n");
+            writer.print("    Pool pool = pools.get();\n");
+            writer.print("    if (pool.size == 0) {\n");
+            writer.print("      return newMessage(sysId, componentId);\n    }\n");
+            writer.print("    MAVLinkMessage msg = pool.messages[--pool.size];\n");
+            writer.print("    pool.messages[pool.size] = null;\n");
+            writer.print("    msg.sysId = sysId;\n");
+            writer.print("    msg.componentId = componentId;\n");
+            writer.print("    msg.sequence = 0;\n");
+            if (mavlink2) {
+                // a MAVLink 1 frame does not set the flags, they must not come from an earlier MAVLink 2 frame
+                writer.print("    msg.incompatFlags = 0;\n");
+                writer.print("    msg.compatFlags = 0;\n");
             }
-            else {
-                writer.print("import java.nio.ByteBuffer;\n");
-                writer.print("import java.nio.ByteOrder;\n");
+            writer.print("    return msg;\n");
+            writer.print("  }\n");
+            writer.print("  /**\n");
+            writer.print("   * Give back a message to the pool of the current thread. It must not be used anymore by the caller.\n");
+            writer.print("   * All fields are overwritten by the next decode.\n");
+            writer.print("   */\n");
+            writer.print("  public void release(MAVLinkMessage msg) {\n");
+            writer.print("    if (msg == null || msg.messageType != msgid) {\n");
+            writer.print("      return;\n    }\n");
+            writer.print("    Pool pool = pools.get();\n");
+            writer.print("    if (pool.size < POOL_SIZE) {\n");
+            writer.print("      pool.messages[pool.size++] = msg;\n    }\n");
+            writer.print("  }\n");
+            writer.print("}\n");
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
             }
-            writer.print(imports);
-            writer.print("/**\n * Class MAVLinkMessageFactory\n * Generate MAVLink message classes from byte array\n **/\n");
-            writer.print("public class MAVLinkMessageFactory implements IMAVLinkMessage, IMAVLinkMessageID {\n");
-            writer.print("public static MAVLinkMessage getMessage(int msgid, int sysId, int componentId, byte[] rawData) throws IOException {\n");
-            writer.print("    MAVLinkMessage msg=null;\n");
-            if (forEmbeddedJava) {
-                if (isLittleEndian) {
-                    writer.print("    LittleEndianDataInputStream dis = new LittleEndianDataInputStream(new ByteArrayInputStream(rawData));\n");
-                }
-                else {
-                    writer.print("    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(rawData));\n");
-                }
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
             }
-            else {
-                if (isLittleEndian) {
-                    writer.print("    ByteBuffer dis = ByteBuffer.wrap(rawData).order(ByteOrder.LITTLE_ENDIAN);\n");
-                }
-                else {
-                    writer.print("    ByteBuffer dis = ByteBuffer.wrap(rawData).order(ByteOrder.BIG_ENDIAN);\n");
-                }
+        }
+    }
+
+    /**
+     * Generate the interface of typed message listeners of MAVLinkDispatcher
+     * 
+     * @param targetPath
+     */
+    protected void generateHandlerInterface(String targetPath) {
+        String packageName = "org.mavlink.messages";
+        String directory = targetPath + "/org/mavlink/messages/";
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String className = "IMAVLinkMessageHandler";
+        String filename = directory + className + ".java";
+        try {
+            File file = new File(directory);
+            file.mkdirs();
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("/**\n * Interface IMAVLinkMessageHandler\n * Listener of the messages of one type given to MAVLinkDispatcher\n **/\n");
+            writer.print("public interface IMAVLinkMessageHandler<T extends MAVLinkMessage> {\n");
+            writer.print("  /**\n   * Called for each message dispatched. The message is shared with the other listeners and must not be modified.\n   */\n");
+            writer.print("  public void onMessage(T msg);\n");
+            writer.print("}\n");
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
             }
-            writer.print("    switch(msgid) {\n");
-            for (MAVLinkMessage message : mavlink.getMessages().values()) {
-                String msgClassName = "msg_" + message.getName().toLowerCase();
-                String id = MAVLINK_MSG + "_ID_" + message.getName();
-                writer.print("  case " + id + ":\n");
-                writer.print("      msg = new " + msgClassName + "(sysId, componentId);\n");
-                writer.print("      msg.decode(dis);\n");
-                writer.print("      break;\n");
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
             }
-            writer.print("  default:\n");
-            writer.print("      System.out.println(\"Mavlink Factory Error : unknown MsgId : \" + msgid);\n");
+        }
+    }
+
+    /**
+     * Generate the dispatcher of decoded messages to listeners registered by message id.
+     * Listeners are kept in an array by message, at the index of the message id in MAVLinkSchema.
+     * 
+     * @param targetPath
+     */
+    protected void generateDispatcherClass(String targetPath) {
+        String packageName = "org.mavlink.messages";
+        String directory = targetPath + "/org/mavlink/messages/";
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String className = "MAVLinkDispatcher";
+        String filename = directory + className + ".java";
+        try {
+            File file = new File(directory);
+            file.mkdirs();
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("import java.util.concurrent.Executor;\n");
+            writer.print("import java.util.concurrent.ExecutorService;\n");
+            writer.print("import java.util.concurrent.Executors;\n");
+            writer.print("import java.util.concurrent.atomic.AtomicReferenceArray;\n");
+            writer.print("/**\n * Class MAVLinkDispatcher\n");
+            writer.print(" * Give decoded messages to the listeners of their message id.\n");
+            writer.print(" * Each listener runs inline in the thread calling dispatch, or in its own executor so a slow listener\n");
+            writer.print(" * does not stall the reader. Listeners can be added and removed by any thread while messages are dispatched.\n **/\n");
+            writer.print("public class MAVLinkDispatcher {\n");
+            writer.print("  private static final class Listener {\n");
+            writer.print("    final IMAVLinkMessageHandler<MAVLinkMessage> handler;\n");
+            writer.print("    final Executor executor;\n");
+            writer.print("    Listener(IMAVLinkMessageHandler<MAVLinkMessage> handler, Executor executor) {\n");
+            writer.print("      this.handler = handler;\n");
+            writer.print("      this.executor = executor;\n    }\n  }\n");
+            writer.print("  /**\n   * Listeners of each message, at the index of the message id in MAVLinkSchema\n   */\n");
+            writer.print("  private final AtomicReferenceArray<Listener[]> listeners = new AtomicReferenceArray<Listener[]>(MAVLinkSchema.IDS.length);\n");
+            writer.print("/**\n");
+            writer.print(" * Listen to a message type in the thread calling dispatch\n");
+            writer.print(" */\n");
+            writer.print("public <T extends MAVLinkMessage> void on(Class<T> type, IMAVLinkMessageHandler<? super T> handler) {\n");
+            writer.print("    on(type, handler, null);\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Listen to a message type\n");
+            writer.print(" * @param type message class, msg_heartbeat.class for example\n");
+            writer.print(" * @param handler listener\n");
+            writer.print(" * @param executor executor running the listener, null to run it in the thread calling dispatch\n");
+            writer.print(" */\n");
+            writer.print("public <T extends MAVLinkMessage> void on(Class<T> type, IMAVLinkMessageHandler<? super T> handler, Executor executor) {\n");
+            writer.print("    int msgid = MAVLinkSchema.idOf(type);\n");
+            writer.print("    if (msgid < 0) {\n");
+            writer.print("      throw new IllegalArgumentException(\"Not a message class : \" + type);\n    }\n");
+            writer.print("    on(msgid, handler, executor);\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Listen to a message id\n");
+            writer.print(" * @param executor executor running the listener, null to run it in the thread calling dispatch\n");
+            writer.print(" */\n");
+            writer.print("@SuppressWarnings(\"unchecked\")\n");
+            writer.print("public void on(int msgid, IMAVLinkMessageHandler<?> handler, Executor executor) {\n");
+            writer.print("    int index = MAVLinkSchema.indexOf(msgid);\n");
+            writer.print("    if (index < 0) {\n");
+            writer.print("      throw new IllegalArgumentException(\"Unknown message id : \" + msgid);\n    }\n");
+            writer.print("    Listener listener = new Listener((IMAVLinkMessageHandler<MAVLinkMessage>) handler, executor);\n");
+            writer.print("    Listener[] old, array;\n");
+            writer.print("    do {\n");
+            writer.print("      old = listeners.get(index);\n");
+            writer.print("      int n = old == null ? 0 : old.length;\n");
+            writer.print("      array = new Listener[n + 1];\n");
+            writer.print("      if (old != null) {\n");
+            writer.print("        System.arraycopy(old, 0, array, 0, n);\n      }\n");
+            writer.print("      array[n] = listener;\n");
+            writer.print("    } while (!listeners.compareAndSet(index, old, array));\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Remove a listener from all message ids\n");
+            writer.print(" */\n");
+            writer.print("public void remove(IMAVLinkMessageHandler<?> handler) {\n");
+            writer.print("    for (int index = 0; index < listeners.length(); index++) {\n");
+            writer.print("      Listener[] old, array;\n");
+            writer.print("      do {\n");
+            writer.print("        old = listeners.get(index);\n");
+            writer.print("        if (old == null) {\n");
+            writer.print("          break;\n        }\n");
+            writer.print("        int n = 0;\n");
+            writer.print("        for (int i = 0; i < old.length; i++) {\n");
+            writer.print("          if (old[i].handler != handler) {\n");
+            writer.print("            n++;\n          }\n        }\n");
+            writer.print("        array = n == 0 ? null : new Listener[n];\n");
+            writer.print("        n = 0;\n");
+            writer.print("        for (int i = 0; i < old.length; i++) {\n");
+            writer.print("          if (old[i].handler != handler) {\n");
+            writer.print("            array[n++] = old[i];\n          }\n        }\n");
+            writer.print("      } while (!listeners.compareAndSet(index, old, array));\n");
             writer.print("    }\n");
-            writer.print("    return msg;\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return true if the message id has listeners\n");
+            writer.print(" */\n");
+            writer.print("public boolean hasListeners(int msgid) {\n");
+            writer.print("    int index = MAVLinkSchema.indexOf(msgid);\n");
+            writer.print("    return index >= 0 && listeners.get(index) != null;\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * Give a message to the listeners of its id. Inline listeners are called first, in the order they were added.\n");
+            writer.print(" * @return true if the message was given to an executor : it is still used and must not be released or reused\n");
+            writer.print(" */\n");
+            writer.print("public boolean dispatch(final MAVLinkMessage msg) {\n");
+            writer.print("    if (msg == null) {\n");
+            writer.print("      return false;\n    }\n");
+            writer.print("    int index = MAVLinkSchema.indexOf(msg.messageType);\n");
+            writer.print("    Listener[] array = index < 0 ? null : listeners.get(index);\n");
+            writer.print("    if (array == null) {\n");
+            writer.print("      return false;\n    }\n");
+            writer.print("    boolean async = false;\n");
+            writer.print("    for (int i = 0; i < array.length; i++) {\n");
+            writer.print("      if (array[i].executor == null) {\n");
+            writer.print("        try {\n");
+            writer.print("          array[i].handler.onMessage(msg);\n        }\n");
+            writer.print("        catch (RuntimeException e) {\n");
+            writer.print("          System.err.println(\"ERROR : \" + e);\n");
+            writer.print("          e.printStackTrace();\n        }\n      }\n    }\n");
+            writer.print("    for (int i = 0; i < array.length; i++) {\n");
+            writer.print("      if (array[i].executor != null) {\n");
+            writer.print("        final IMAVLinkMessageHandler<MAVLinkMessage> handler = array[i].handler;\n");
+            writer.print("        array[i].executor.execute(new Runnable() {\n");
+            writer.print("          public void run() {\n");
+            writer.print("            handler.onMessage(msg);\n          }\n        });\n");
+            writer.print("        async = true;\n      }\n    }\n");
+            writer.print("    return async;\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return an executor starting a virtual thread for each message on Java 21 and later, a cached thread pool before\n");
+            writer.print(" */\n");
+            writer.print("public static ExecutorService newVirtualThreadExecutor() {\n");
+            writer.print("    try {\n");
+            writer.print("      return (ExecutorService) Executors.class.getMethod(\"newVirtualThreadPerTaskExecutor\").invoke(null);\n    }\n");
+            writer.print("    catch (Exception e) {\n");
+            writer.print("      return Executors.newCachedThreadPool();\n    }\n");
             writer.print("  }\n");
             writer.print("}\n");
         }
@@ -673,7 +2063,7 @@ public class MAVLinkGenerator {
         try {
             File file = new File(directory);
             file.mkdirs();
-            output = new FileOutputStream(filename, false);
+            output = openOutput(filename);
             writer = new PrintWriter(output);
             // Write Header
             writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
@@ -681,6 +2071,9 @@ public class MAVLinkGenerator {
             writer.print("/**\n * Interface IMAVLinkMessageId\n * Generate al MAVLink message Id in an interface\n **/\n");
             writer.print("public interface IMAVLinkMessageID {\n");
             for (MAVLinkMessage message : mavlink.getMessages().values()) {
+                if (!isGenerated(message)) {
+                    continue;
+                }
                 String id = MAVLINK_MSG + "_ID_" + message.getName();
                 writer.print("  public static int " + id + " = " + message.getId() + ";\n");
             }
@@ -702,6 +2095,242 @@ public class MAVLinkGenerator {
         }
     }
 
+    /**
+     * Generate the MAVLinkLayouts class : unaligned value layouts in MAVLink byte order used by MemorySegment accessors
+     * 
+     * @param targetPath
+     */
+    protected void generateLayoutsClass(String targetPath) {
+        String packageName = "org.mavlink.messages";
+        String directory = targetPath + "/org/mavlink/messages/";
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String className = "MAVLinkLayouts";
+        String filename = directory + className + ".java";
+        String order = isLittleEndian ? "ByteOrder.LITTLE_ENDIAN" : "ByteOrder.BIG_ENDIAN";
+        try {
+            File file = new File(directory);
+            file.mkdirs();
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("import java.lang.foreign.ValueLayout;\n");
+            writer.print("import java.nio.ByteOrder;\n");
+            writer.print("/**\n * Class MAVLinkLayouts\n");
+            writer.print(" * Value layouts of MAVLink types in a MemorySegment. Fields are not aligned in frames.\n **/\n");
+            writer.print("public final class MAVLinkLayouts {\n");
+            writer.print("  public static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;\n");
+            writer.print("  public static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(" + order + ");\n");
+            writer.print("  public static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(" + order + ");\n");
+            writer.print("  public static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(" + order + ");\n");
+            writer.print("  public static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(" + order + ");\n");
+            writer.print("  public static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(" + order + ");\n");
+            writer.print("  private MAVLinkLayouts() {\n  }\n");
+            writer.print("}\n");
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Generate the MAVLinkSchema registry : metadata of all messages in primitive arrays sorted by message id.
+     * Field arrays are stored in string constants and expanded at class loading, to stay below method size limits.
+     * 
+     * @param mavlink
+     * @param targetPath
+     */
+    protected void generateSchemaClass(MAVLinkData mavlink, String targetPath) {
+        String packageRootName = "org.mavlink.messages";
+        String packageName = packageRootName;
+        String directory = targetPath + "/org/mavlink/messages/";
+        OutputStream output = null;
+        PrintWriter writer = null;
+        String className = "MAVLinkSchema";
+        String filename = directory + className + ".java";
+        Map<Integer, MAVLinkMessage> messages = new TreeMap<Integer, MAVLinkMessage>();
+        for (MAVLinkMessage message : mavlink.getMessages().values()) {
+            if (isGenerated(message)) {
+                messages.put(Integer.valueOf(message.getId()), message);
+            }
+        }
+        StringBuffer ids = new StringBuffer();
+        StringBuffer names = new StringBuffer();
+        StringBuffer lengths = new StringBuffer();
+        StringBuffer crcs = new StringBuffer();
+        StringBuffer starts = new StringBuffer();
+        StringBuffer fieldNames = new StringBuffer();
+        StringBuffer fieldTypes = new StringBuffer();
+        StringBuffer fieldOffsets = new StringBuffer();
+        StringBuffer fieldArrayLengths = new StringBuffer();
+        int nbFields = 0;
+        for (MAVLinkMessage message : messages.values()) {
+            String separator = ids.length() == 0 ? "" : ", ";
+            ids.append(separator + message.getId());
+            names.append((names.length() == 0 ? "" : ",") + message.getName());
+            lengths.append(separator + getPayloadLength(message));
+            crcs.append(separator + messageCrcs.get(Integer.valueOf(message.getId())));
+            starts.append(separator + nbFields);
+            int offset = 0;
+            for (MAVLinkField field : message.getFields()) {
+                if (field.isExtension() && !mavlink2) {
+                    continue;
+                }
+                MAVLinkDataType type = field.getType();
+                fieldNames.append((fieldNames.length() == 0 ? "" : ",") + field.getName().trim());
+                fieldTypes.append(getCharLiteral(type.type == MAVLinkDataType.ARRAY ? MAVLinkDataType.CHAR : type.type));
+                fieldOffsets.append(getCharLiteral(offset));
+                fieldArrayLengths.append(getCharLiteral(type.isArray ? type.arrayLenth : 0));
+                offset += type.getLengthType();
+                nbFields++;
+            }
+        }
+        starts.append((starts.length() == 0 ? "" : ", ") + nbFields);
+        try {
+            File file = new File(directory);
+            file.mkdirs();
+            output = openOutput(filename);
+            writer = new PrintWriter(output);
+            writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
+            writer.print("package " + packageName + ";\n");
+            writer.print("import java.util.Arrays;\n");
+            writer.print("/**\n * Class MAVLinkSchema\n");
+            writer.print(" * Name, payload length, extra crc and fields layout of all messages, without loading message classes.\n");
+            writer.print(" * Message arrays are sorted by message id, use indexOf to find the index of a message id.\n");
+            writer.print(" * Fields of the message at index are in field arrays from FIELD_START[index] to FIELD_START[index+1] excluded,\n");
+            writer.print(" * in wire order.\n **/\n");
+            writer.print("public final class MAVLinkSchema {\n");
+            String[] typeConstants = { "CHAR", "UINT8", "INT8", "UINT16", "INT16", "UINT32", "INT32", "INT64", "UINT64", "FLOAT", "DOUBLE" };
+            StringBuffer typeNames = new StringBuffer();
+            StringBuffer typeSizes = new StringBuffer();
+            for (int i = 0; i < typeConstants.length; i++) {
+                writer.print("  public static final int TYPE_" + typeConstants[i] + " = " + i + ";\n");
+                typeNames.append((i == 0 ? "" : ", ") + "\"" + MAVLinkDataType.getCType(i) + "\"");
+                typeSizes.append((i == 0 ? "" : ", ") + new MAVLinkDataType(MAVLinkDataType.getCType(i)).getTypeSize());
+            }
+            writer.print("  /**\n   * C name of each field type\n   */\n");
+            writer.print("  public static final String[] TYPE_NAMES = { " + typeNames + " };\n");
+            writer.print("  /**\n   * Size in bytes of each field type\n   */\n");
+            writer.print("  public static final int[] TYPE_SIZES = { " + typeSizes + " };\n");
+            writer.print("  /**\n   * Message ids, sorted\n   */\n");
+            writer.print("  public static final int[] IDS = { " + ids + " };\n");
+            writer.print("  public static final String[] NAMES = \"" + names + "\".split(\",\");\n");
+            writer.print("  /**\n   * Payload length without MAVLink 2 truncation\n   */\n");
+            writer.print("  public static final int[] LENGTHS = { " + lengths + " };\n");
+            writer.print("  public static final int[] CRC_EXTRAS = { " + crcs + " };\n");
+            writer.print("  /**\n   * Index of the first field of each message in field arrays, followed by the number of fields\n   */\n");
+            writer.print("  public static final int[] FIELD_START = { " + starts + " };\n");
+            writer.print("  public static final String[] FIELD_NAMES = \"" + fieldNames + "\".split(\",\");\n");
+            writer.print("  /**\n   * Type of each field, one of TYPE_ constants\n   */\n");
+            writer.print("  public static final byte[] FIELD_TYPES = toBytes(\"" + fieldTypes + "\");\n");
+            writer.print("  /**\n   * Offset of each field in the payload\n   */\n");
+            writer.print("  public static final int[] FIELD_OFFSETS = toInts(\"" + fieldOffsets + "\");\n");
+            writer.print("  /**\n   * Number of elements of array fields, 0 for other fields\n   */\n");
+            writer.print("  public static final int[] FIELD_ARRAY_LENGTHS = toInts(\"" + fieldArrayLengths + "\");\n");
+            writer.print("  private MAVLinkSchema() {\n  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return index of msgid in message arrays, or a negative value if the id is unknown\n");
+            writer.print(" */\n");
+            writer.print("public static int indexOf(int msgid) {\n");
+            writer.print("    return Arrays.binarySearch(IDS, msgid);\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return id of a message class, msg_heartbeat.class for example, or -1 if it is not a message of the schema\n");
+            writer.print(" */\n");
+            writer.print("public static int idOf(Class<?> type) {\n");
+            writer.print("    String name = type.getSimpleName();\n");
+            writer.print("    if (!name.startsWith(\"msg_\")) {\n");
+            writer.print("      return -1;\n    }\n");
+            writer.print("    for (int i=0; i<NAMES.length; i++) {\n");
+            writer.print("      if (name.length() == NAMES[i].length() + 4 && name.regionMatches(true, 4, NAMES[i], 0, NAMES[i].length())) {\n");
+            writer.print("        return IDS[i];\n      }\n    }\n");
+            writer.print("    return -1;\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return name of the message, or null if the id is unknown\n");
+            writer.print(" */\n");
+            writer.print("public static String getName(int msgid) {\n");
+            writer.print("    int index = indexOf(msgid);\n");
+            writer.print("    return index < 0 ? null : NAMES[index];\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return payload length of the message, or -1 if the id is unknown\n");
+            writer.print(" */\n");
+            writer.print("public static int getLength(int msgid) {\n");
+            writer.print("    int index = indexOf(msgid);\n");
+            writer.print("    return index < 0 ? -1 : LENGTHS[index];\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return extra crc of the message, or -1 if the id is unknown\n");
+            writer.print(" */\n");
+            writer.print("public static int getCrcExtra(int msgid) {\n");
+            writer.print("    int index = indexOf(msgid);\n");
+            writer.print("    return index < 0 ? -1 : CRC_EXTRAS[index];\n");
+            writer.print("  }\n");
+            writer.print("/**\n");
+            writer.print(" * @return index in field arrays of the field of message msgid, or -1 if not found\n");
+            writer.print(" */\n");
+            writer.print("public static int fieldIndexOf(int msgid, String name) {\n");
+            writer.print("    int index = indexOf(msgid);\n");
+            writer.print("    if (index >= 0) {\n");
+            writer.print("      for (int i=FIELD_START[index]; i<FIELD_START[index + 1]; i++) {\n");
+            writer.print("        if (FIELD_NAMES[i].equals(name)) {\n");
+            writer.print("          return i;\n        }\n      }\n    }\n");
+            writer.print("    return -1;\n");
+            writer.print("  }\n");
+            writer.print("  private static byte[] toBytes(String values) {\n");
+            writer.print("    byte[] result = new byte[values.length()];\n");
+            writer.print("    for (int i=0; i<result.length; i++) {\n      result[i] = (byte) values.charAt(i);\n    }\n");
+            writer.print("    return result;\n  }\n");
+            writer.print("  private static int[] toInts(String values) {\n");
+            writer.print("    int[] result = new int[values.length()];\n");
+            writer.print("    for (int i=0; i<result.length; i++) {\n      result[i] = values.charAt(i);\n    }\n");
+            writer.print("    return result;\n  }\n");
+            writer.print("}\n");
+        }
+        catch (Exception e) {
+            System.err.println("ERROR : " + e);
+            e.printStackTrace();
+        }
+        finally {
+            try {
+                writer.close();
+                output.close();
+            }
+            catch (Exception ex) {
+                System.err.println("ERROR : " + ex);
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Return a byte value as an octal escape for a Java string constant.
+     * Unicode escapes can not be used because they are translated before parsing.
+     * 
+     * @param value between 0 and 255, as all payload offsets and lengths
+     * @return the escaped char
+     */
+    protected String getCharLiteral(int value) {
+        String octal = Integer.toOctalString(value & 0x00FF);
+        while (octal.length() < 3) {
+            octal = "0" + octal;
+        }
+        return "\\" + octal;
+    }
+
     /**
      * Generate interface with all extra crc for messages
      * 
@@ -718,7 +2347,7 @@ public class MAVLinkGenerator {
         try {
             File file = new File(directory);
             file.mkdirs();
-            output = new FileOutputStream(filename, false);
+            output = openOutput(filename);
             writer = new PrintWriter(output);
             // Write Header
             writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
@@ -732,14 +2361,38 @@ public class MAVLinkGenerator {
                 writer.print("  public static boolean MAVLINK_EXTRA_CRC = false;\n");
             }
             writer.print("  public static char[] MAVLINK_MESSAGE_CRCS = {\n");
-            for (int i = 0; i < MAVLINK_MESSAGE_CRCS.length; i++) {
+            for (int i = 0; i < extraCrcs.length; i++) {
                 if (i % 25 == 0)
                     writer.print("\n          ");
-                writer.print(MAVLINK_MESSAGE_CRCS[i]);
-                if (i != MAVLINK_MESSAGE_CRCS.length - 1)
+                writer.print(extraCrcs[i]);
+                if (i != extraCrcs.length - 1)
                     writer.print(", ");
             }
-            writer.print("};\n}");
+            writer.print("};\n");
+            if (mavlink2) {
+                // MAVLink 2 ids are on 24 bits : sorted ids and their extra crc for a binary search
+                writer.print("  /**\n   * All message ids sorted, to search the extra crc of MAVLink 2 ids\n   */\n");
+                writer.print("  public static int[] MAVLINK_MESSAGE_IDS = {");
+                int i = 0;
+                for (Integer msgId : messageCrcs.keySet()) {
+                    if (i % 25 == 0)
+                        writer.print("\n          ");
+                    writer.print(msgId + (i != messageCrcs.size() - 1 ? ", " : ""));
+                    i++;
+                }
+                writer.print("};\n");
+                writer.print("  /**\n   * Extra crc of messages in MAVLINK_MESSAGE_IDS order\n   */\n");
+                writer.print("  public static char[] MAVLINK_MESSAGE_IDS_CRCS = {");
+                i = 0;
+                for (Integer crc : messageCrcs.values()) {
+                    if (i % 25 == 0)
+                        writer.print("\n          ");
+                    writer.print(crc + (i != messageCrcs.size() - 1 ? ", " : ""));
+                    i++;
+                }
+                writer.print("};\n");
+            }
+            writer.print("}");
         }
         catch (Exception e) {
             System.err.println("ERROR : " + e);
@@ -774,7 +2427,7 @@ public class MAVLinkGenerator {
         try {
             File file = new File(directory);
             file.mkdirs();
-            output = new FileOutputStream(filename, false);
+            output = openOutput(filename);
             writer = new PrintWriter(output);
             // Write Header
             writer.print("/**\n * Generated class : " + className + "\n * DO NOT MODIFY!\n **/\n");
@@ -787,12 +2440,16 @@ public class MAVLinkGenerator {
                 else {
                     writer.print("import java.io.DataInputStream;\n");
                 }
+                writer.print("import java.nio.ByteBuffer;\n");
             }
             else {
                 writer.print("import java.io.Serializable;");
                 writer.print("import java.nio.ByteBuffer;\n");
                 writer.print("import java.nio.ByteOrder;\n");
             }
+            if (memorySegment) {
+                writer.print("import java.lang.foreign.MemorySegment;\n");
+            }
             writer.print("/**\n * Class MAVLinkMessageCoder\n * Use to declarate encode and decode functions\n **/\n");
             writer.print("public abstract class MAVLinkMessageCoder ");
             if (forEmbeddedJava) {
@@ -801,6 +2458,16 @@ public class MAVLinkGenerator {
             else {
                 writer.print(" implements Serializable{\n");
             }
+            if (mavlink2) {
+                writer.print("  /**\n");
+                writer.print("   * MAVLink 2 incompatibility flags\n");
+                writer.print("   */\n");
+                writer.print("  public int incompatFlags = 0;\n");
+                writer.print("  /**\n");
+                writer.print("   * MAVLink 2 compatibility flags\n");
+                writer.print("   */\n");
+                writer.print("  public int compatFlags = 0;\n");
+            }
             writer.print("  /**\n");
             writer.print("   * Decode message with raw data\n");
             writer.print("   */\n");
@@ -815,6 +2482,22 @@ public class MAVLinkGenerator {
             else {
                 writer.print("  public abstract void decode(ByteBuffer dis) throws IOException ;\n");
             }
+            if (absoluteDecode) {
+                writer.print("  /**\n");
+                writer.print("   * Decode message with raw data stored in buf at offset\n");
+                writer.print("   */\n");
+                writer.print("  public abstract void decode(byte[] buf, int offset) ;\n");
+            }
+            if (memorySegment) {
+                writer.print("  /**\n");
+                writer.print("   * Decode message with raw data stored off-heap in seg at offset\n");
+                writer.print("   */\n");
+                writer.print("  public abstract void decode(MemorySegment seg, long offset) ;\n");
+                writer.print("  /**\n");
+                writer.print("   * Encode message in place in seg at position with given sequence\n");
+                writer.print("   */\n");
+                writer.print("  public abstract int encodeTo(MemorySegment seg, long position, int sequence) ;\n");
+            }
             writer.print("  /**\n");
             writer.print("   * Encode message in raw data\n");
             writer.print("   */\n");
@@ -829,6 +2512,10 @@ public class MAVLinkGenerator {
             else {
                 writer.print("  public abstract byte[] encode() throws IOException ;\n");
             }
+            writer.print("  /**\n");
+            writer.print("   * Encode message in place in a ByteBuffer with given sequence\n");
+            writer.print("   */\n");
+            writer.print("  public abstract int encodeTo(ByteBuffer dos, int sequence) ;\n");
             writer.print("}\n");
         }
         catch (Exception e) {
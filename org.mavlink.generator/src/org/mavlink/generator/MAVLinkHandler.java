@@ -57,6 +57,8 @@ public class MAVLinkHandler extends DefaultHandler implements IMAVLinkTag {
 
     private boolean inField;
 
+    private boolean inExtensions;
+
     private boolean inVersion;
 
     private boolean inDescription;
@@ -168,11 +170,16 @@ public class MAVLinkHandler extends DefaultHandler implements IMAVLinkTag {
                 String name = attributes.getValue(NAME_ATTR);
                 String type = attributes.getValue(TYPE_ATTR);
                 currentField = new MAVLinkField(new MAVLinkDataType(type), name);
+                currentField.setExtension(inExtensions);
             }
             catch (Exception e) {
                 throw new SAXException(e);
             }
         }
+        else if (qName.equalsIgnoreCase(EXTENSIONS_TAG)) {
+            // All following fields of the message are MAVLink 2 extensions
+            inExtensions = true;
+        }
         else if (qName.equalsIgnoreCase(VERSION_TAG)) {
             inVersion = true;
             buffer = new StringBuffer();
@@ -204,7 +211,7 @@ public class MAVLinkHandler extends DefaultHandler implements IMAVLinkTag {
         if (qName.equalsIgnoreCase(INCLUDE_TAG)) {
             inInclude = false;
             try {
-                generator.parseFile(mavlink, buffer.toString().trim(), path, target, true);
+                generator.parseInclude(mavlink, buffer.toString().trim(), path, target);
             }
             catch (ParserConfigurationException e) {
                 System.err.println("ERROR parsing file " + buffer.toString().trim() + " from " + path + " to " + target + " : " + e);
@@ -233,6 +240,7 @@ public class MAVLinkHandler extends DefaultHandler implements IMAVLinkTag {
         }
         else if (qName.equalsIgnoreCase(MESSAGE_TAG)) {
             inMessage = false;
+            inExtensions = false;
             //mavlink.getMessages().put(currentMessage.getName(),currentMessage);
             buffer = new StringBuffer();
         }
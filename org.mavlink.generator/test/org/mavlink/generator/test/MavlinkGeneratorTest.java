@@ -22,11 +22,25 @@
 
 package org.mavlink.generator.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
 
 import org.junit.Test;
+import org.mavlink.MAVLinkCRC;
 import org.mavlink.generator.MAVLinkGenerator;
 
 /**
@@ -50,6 +64,214 @@ public class MavlinkGeneratorTest {
         catch (Exception e) {
             fail("ERROR : " + e);
         }
+        String messages = ".." + File.separator + "org.mavlink.library" + File.separator + "generated" + File.separator + "org" + File.separator + "mavlink"
+                          + File.separator + "messages" + File.separator;
+        assertTrue(new File(messages + "MAVLinkMessageFactory.java").isFile());
+        assertTrue(new File(messages + "MAVLinkDispatcher.java").isFile());
+        assertTrue(new File(messages + "MAVLinkSchema.java").isFile());
+        assertTrue(new File(messages + "ja4rtor" + File.separator + "msg_heartbeat.java").isFile());
+    }
+
+    /**
+     * Test method for {@link org.mavlink.generator.MAVLinkGenerator#main(java.lang.String[])} with generation options.
+     */
+    @Test
+    public void testMainWithOptions() throws IOException {
+        try {
+            String[] args = { "test" + File.separator + "ja4rtor.xml", "target" + File.separator + "generated-options" + File.separator + "", "true",
+                             "true", "true", "true", "absoluteDecode", "memorySegment" };
+            MAVLinkGenerator.main(args);
+        }
+        catch (Exception e) {
+            fail("ERROR : " + e);
+        }
+        String messages = "target" + File.separator + "generated-options" + File.separator + "org" + File.separator + "mavlink" + File.separator
+                          + "messages" + File.separator;
+        String heartbeat = read(messages + "ja4rtor" + File.separator + "msg_heartbeat.java");
+        assertTrue(heartbeat.contains("public void decode(byte[] buf, int offset)"));
+        assertTrue(heartbeat.contains("public void decode(MemorySegment seg, long offset)"));
+        assertTrue(heartbeat.contains("public int encodeTo(MemorySegment seg, long position, int sequence)"));
+        assertTrue(read(messages + "MAVLinkMessageFactory.java").contains("msg.decode(buf, offset);"));
+        assertTrue(new File(messages + "MAVLinkLayouts.java").isFile());
+    }
+
+    /**
+     * Test method for {@link org.mavlink.generator.MAVLinkGenerator#main(java.lang.String[])} for MAVLink 2.
+     */
+    @Test
+    public void testMainMavlink2() throws IOException {
+        try {
+            String[] args = { "test" + File.separator + "ja4rtor.xml", "target" + File.separator + "generated-mavlink2" + File.separator + "", "true",
+                             "true", "true", "true", "mavlink2", "absoluteDecode" };
+            MAVLinkGenerator.main(args);
+        }
+        catch (Exception e) {
+            fail("ERROR : " + e);
+        }
+        String messages = "target" + File.separator + "generated-mavlink2" + File.separator + "org" + File.separator + "mavlink" + File.separator
+                          + "messages" + File.separator;
+        String heartbeat = read(messages + "ja4rtor" + File.separator + "msg_heartbeat.java");
+        assertTrue(heartbeat.contains("dos.put((byte)0xFD);"));
+        assertTrue(heartbeat.contains("dos.put((byte)((messageType >> 16) & 0x00FF));"));
+        assertTrue(read(messages + ".." + File.separator + "IMAVLinkCRC.java").contains("MAVLINK_MESSAGE_IDS"));
+    }
+
+    /**
+     * Test method for {@link org.mavlink.generator.MAVLinkGenerator#main(java.lang.String[])} with a directory of dialects.
+     * The second generation must find all files unchanged.
+     */
+    @Test
+    public void testMainDirectory() {
+        try {
+            String[] args = { "test", "target" + File.separator + "generated-directory" + File.separator + "", "true", "true", "true", "true" };
+            MAVLinkGenerator.main(args);
+            File heartbeat = new File("target" + File.separator + "generated-directory" + File.separator + "ja4rtor" + File.separator + "org"
+                                      + File.separator + "mavlink" + File.separator + "messages" + File.separator + "ja4rtor" + File.separator
+                                      + "msg_heartbeat.java");
+            File factory = new File("target" + File.separator + "generated-directory" + File.separator + "common" + File.separator + "org"
+                                    + File.separator + "mavlink" + File.separator + "messages" + File.separator + "MAVLinkMessageFactory.java");
+            assertTrue(heartbeat.isFile());
+            assertTrue(factory.isFile());
+            long modified = heartbeat.lastModified();
+            MAVLinkGenerator.main(args);
+            assertEquals(modified, heartbeat.lastModified());
+        }
+        catch (Exception e) {
+            fail("ERROR : " + e);
+        }
+    }
+
+    /**
+     * Compile the MAVLink 2 code generated for test/mavlink2/v2test.xml and check its frames :
+     * 24 bits message id, payload truncated after its last non zero byte, extensions out of the extra crc,
+     * and decode of the encoded frame by the factory.
+     * MAVLinkMessage of org.mavlink.library is replaced by a minimal class.
+     */
+    @Test
+    public void testMavlink2Frames() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            // a JRE can't compile the generated code
+            return;
+        }
+        String target = "target" + File.separator + "generated-v2test";
+        String[] args = { "test" + File.separator + "mavlink2" + File.separator + "v2test.xml", target + File.separator, "true", "false", "true",
+                         "false", "mavlink2", "absoluteDecode" };
+        MAVLinkGenerator.main(args);
+        File messages = new File(target + File.separator + "org" + File.separator + "mavlink" + File.separator + "messages");
+        FileWriter writer = new FileWriter(new File(messages, "MAVLinkMessage.java"));
+        try {
+            writer.write("package org.mavlink.messages;\n" + "public abstract class MAVLinkMessage extends MAVLinkMessageCoder implements org.mavlink.IMAVLinkMessage {\n"
+                         + "  public int sequence = 0;\n  public int sysId = 1;\n  public int componentId = 1;\n  public int messageType;\n  public int length;\n}\n");
+        }
+        finally {
+            writer.close();
+        }
+        File classes = new File(target + "-classes");
+        classes.mkdirs();
+        List<String> options = new ArrayList<String>();
+        options.add("-nowarn");
+        options.add("-classpath");
+        options.add(System.getProperty("java.class.path"));
+        options.add("-d");
+        options.add(classes.getPath());
+        listSources(messages.getParentFile(), options);
+        assertEquals(0, compiler.run(null, null, null, options.toArray(new String[options.size()])));
+        ClassLoader loader = new URLClassLoader(new URL[] { classes.toURI().toURL() }, getClass().getClassLoader());
+        Class<?> bigId = loader.loadClass("org.mavlink.messages.v2test.msg_big_id");
+        Class<?> withExt = loader.loadClass("org.mavlink.messages.v2test.msg_with_ext");
+        Class<?> factory = loader.loadClass("org.mavlink.messages.MAVLinkMessageFactory");
+
+        // extensions are not in the extra crc
+        assertEquals(extraCrc("BIG_ID uint16_t a uint8_t b "), bigId.getField("MAVLINK_CRC_EXTRA").getInt(null));
+        assertEquals(extraCrc("WITH_EXT uint32_t y uint8_t x "), withExt.getField("MAVLINK_CRC_EXTRA").getInt(null));
+
+        // 24 bits id and truncation after the last non zero byte
+        Object msg = bigId.getConstructor().newInstance();
+        bigId.getField("a").setInt(msg, 0x0102);
+        ByteBuffer frame = encode(bigId, msg);
+        assertEquals(300, (frame.get(7) & 0x00FF) | (frame.get(8) & 0x00FF) << 8 | (frame.get(9) & 0x00FF) << 16);
+        assertEquals(2, frame.get(1));
+        assertEquals(10 + 2 + 2, frame.limit());
+        checkCrc(frame, bigId.getField("MAVLINK_CRC_EXTRA").getInt(null));
+        bigId.getField("ext2").setInt(msg, 5);
+        frame = encode(bigId, msg);
+        assertEquals(8, frame.get(1));
+        checkCrc(frame, bigId.getField("MAVLINK_CRC_EXTRA").getInt(null));
+
+        // encodeTo and absolute decode round trip, with and without truncation
+        bigId.getField("ext1").setFloat(msg, 1.5f);
+        frame = encode(bigId, msg);
+        Object decoded = factory.getMethod("getMessage", int.class, int.class, int.class, byte[].class, int.class, int.class).invoke(null, 300, 1, 1,
+                                                                                                                                     frame.array(), 10,
+                                                                                                                                     frame.get(1) & 0x00FF);
+        assertEquals(0x0102, bigId.getField("a").getInt(decoded));
+        assertEquals(1.5f, bigId.getField("ext1").getFloat(decoded), 0);
+        assertEquals(5, bigId.getField("ext2").getInt(decoded));
+        Object small = bigId.getConstructor().newInstance();
+        bigId.getField("b").setInt(small, 7);
+        frame = encode(bigId, small);
+        assertEquals(3, frame.get(1));
+        decoded = factory.getMethod("getMessage", int.class, int.class, int.class, byte[].class, int.class, int.class).invoke(null, 300, 1, 1,
+                                                                                                                              frame.array(), 10,
+                                                                                                                              frame.get(1) & 0x00FF);
+        assertEquals(0, bigId.getField("a").getInt(decoded));
+        assertEquals(7, bigId.getField("b").getInt(decoded));
+        assertEquals(0, bigId.getField("ext2").getInt(decoded));
+    }
+
+    private static ByteBuffer encode(Class<?> type, Object msg) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(280);
+        int length = ((Integer) type.getMethod("encodeTo", ByteBuffer.class, int.class).invoke(msg, buffer, 0)).intValue();
+        assertEquals(length, buffer.position());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void checkCrc(ByteBuffer frame, int extra) {
+        int len = frame.get(1) & 0x00FF;
+        int crc = MAVLinkCRC.crc_accumulate(frame.array(), 1, 9 + len, MAVLinkCRC.crc_init());
+        crc = MAVLinkCRC.crc_accumulate((byte) extra, crc);
+        assertEquals(crc & 0x00FF, frame.get(10 + len) & 0x00FF);
+        assertEquals((crc >> 8) & 0x00FF, frame.get(11 + len) & 0x00FF);
+    }
+
+    /**
+     * @return extra crc of the message name and base fields, as defined by MAVLink
+     */
+    private static int extraCrc(String signature) {
+        int crc = MAVLinkCRC.crc_init();
+        for (int i = 0; i < signature.length(); i++) {
+            crc = MAVLinkCRC.crc_accumulate((byte) signature.charAt(i), crc);
+        }
+        return (crc & 0x00FF) ^ ((crc >> 8) & 0x00FF);
+    }
+
+    private static void listSources(File directory, List<String> sources) {
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isDirectory()) {
+                listSources(files[i], sources);
+            }
+            else if (files[i].getName().endsWith(".java")) {
+                sources.add(files[i].getPath());
+            }
+        }
+    }
+
+    private static String read(String filename) throws IOException {
+        FileInputStream input = new FileInputStream(filename);
+        try {
+            byte[] data = new byte[(int) new File(filename).length()];
+            int n = 0;
+            while (n < data.length) {
+                n += input.read(data, n, data.length - n);
+            }
+            return new String(data, "UTF-8");
+        }
+        finally {
+            input.close();
+        }
     }
 
 }
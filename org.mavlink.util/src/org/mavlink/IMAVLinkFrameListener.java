@@ -0,0 +1,32 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.IMAVLinkFrameListener.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+/**
+ * Receive frames validated by MAVLinkFrameParser
+ * @version $Rev$
+ *
+ */
+public interface IMAVLinkFrameListener {
+
+    /**
+     * Called for each frame with a valid CRC. Frame bytes are only valid during the call.
+     * @param buffer buffer containing the frame
+     * @param offset position of the packet start byte
+     * @param length length of the frame, signature included
+     */
+    public void onFrame(byte[] buffer, int offset, int length);
+
+}
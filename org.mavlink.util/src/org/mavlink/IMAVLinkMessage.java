@@ -40,6 +40,16 @@ public interface IMAVLinkMessage {
      */
     public final static String STRING_MAVPROT_PACKET_START_V10 = "0xFE";
 
+    /**
+     * Packet start in MAVLink V2.0
+     */
+    public final static byte MAVPROT_PACKET_START_V20 = (byte) 0xFD;
+
+    /**
+     * Packet start in MAVLink V2.0 (String)
+     */
+    public final static String STRING_MAVPROT_PACKET_START_V20 = "0xFD";
+
     /**
      * Packet start in MAVLink V0.9
      */
@@ -55,6 +65,21 @@ public interface IMAVLinkMessage {
      */
     public final static int CRC_LEN = 5;
 
+    /**
+     * Len to add to payload for CRC computing in MAVLink V2.0
+     */
+    public final static int CRC_LEN_V20 = 9;
+
+    /**
+     * Incompatibility flag in MAVLink V2.0 : the packet is signed
+     */
+    public final static int MAVLINK_IFLAG_SIGNED = 0x01;
+
+    /**
+     * Len of the signature appended to a signed packet in MAVLink V2.0
+     */
+    public final static int SIGNATURE_LEN = 13;
+
     /**
      * Use to initialize CRC before computing
      */
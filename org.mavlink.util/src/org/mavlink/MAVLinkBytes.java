@@ -0,0 +1,118 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.MAVLinkBytes.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+/**
+ * Absolute reads of MAVLink types in a byte array.
+ * Used by generated code to decode a message directly in a frame buffer without any stream.
+ * @version $Rev$
+ *
+ */
+public class MAVLinkBytes {
+
+    /**
+     * Read an unsigned byte
+     * @param buffer byte array
+     * @param offset position in buffer
+     * @return unsigned byte value
+     */
+    public static int getUnsignedByte(byte[] buffer, int offset) {
+        return buffer[offset] & 0x00FF;
+    }
+
+    /**
+     * Read a short
+     * @param buffer byte array
+     * @param offset position in buffer
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return short value
+     */
+    public static short getShort(byte[] buffer, int offset, boolean isLittleEndian) {
+        if (isLittleEndian) {
+            return (short) ((buffer[offset] & 0x00FF) | (buffer[offset + 1] << 8));
+        }
+        return (short) ((buffer[offset] << 8) | (buffer[offset + 1] & 0x00FF));
+    }
+
+    /**
+     * Read an unsigned short
+     * @param buffer byte array
+     * @param offset position in buffer
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return unsigned short value
+     */
+    public static int getUnsignedShort(byte[] buffer, int offset, boolean isLittleEndian) {
+        return getShort(buffer, offset, isLittleEndian) & 0x00FFFF;
+    }
+
+    /**
+     * Read an int
+     * @param buffer byte array
+     * @param offset position in buffer
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return int value
+     */
+    public static int getInt(byte[] buffer, int offset, boolean isLittleEndian) {
+        if (isLittleEndian) {
+            return (buffer[offset] & 0x00FF) | ((buffer[offset + 1] & 0x00FF) << 8) | ((buffer[offset + 2] & 0x00FF) << 16)
+                   | (buffer[offset + 3] << 24);
+        }
+        return (buffer[offset] << 24) | ((buffer[offset + 1] & 0x00FF) << 16) | ((buffer[offset + 2] & 0x00FF) << 8)
+               | (buffer[offset + 3] & 0x00FF);
+    }
+
+    /**
+     * Read a long
+     * @param buffer byte array
+     * @param offset position in buffer
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return long value
+     */
+    public static long getLong(byte[] buffer, int offset, boolean isLittleEndian) {
+        long low, high;
+        if (isLittleEndian) {
+            low = getInt(buffer, offset, true) & 0x00FFFFFFFFL;
+            high = getInt(buffer, offset + 4, true);
+        }
+        else {
+            high = getInt(buffer, offset, false);
+            low = getInt(buffer, offset + 4, false) & 0x00FFFFFFFFL;
+        }
+        return (high << 32) | low;
+    }
+
+    /**
+     * Read a float
+     * @param buffer byte array
+     * @param offset position in buffer
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return float value
+     */
+    public static float getFloat(byte[] buffer, int offset, boolean isLittleEndian) {
+        return Float.intBitsToFloat(getInt(buffer, offset, isLittleEndian));
+    }
+
+    /**
+     * Read a double
+     * @param buffer byte array
+     * @param offset position in buffer
+     * @param isLittleEndian true if data are stored in Little Endian
+     * @return double value
+     */
+    public static double getDouble(byte[] buffer, int offset, boolean isLittleEndian) {
+        return Double.longBitsToDouble(getLong(buffer, offset, isLittleEndian));
+    }
+
+}
@@ -22,6 +22,9 @@
 
 package org.mavlink;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * MAVLink CRC computation
  * @author ghelle
@@ -43,6 +46,38 @@ public class MAVLinkCRC {
         return buffer;
     }
 
+    /**
+     * Reversed polynomial of CRC-16/MCRF4XX used by MAVLink
+     */
+    private static final int POLYNOMIAL = 0x8408;
+
+    /**
+     * Number of bytes processed by each step of crc_accumulate on a range
+     */
+    private static final int SLICES = 8;
+
+    /**
+     * Tables of slice-by-8 : entry k * 256 + b is the CRC of byte b followed by k zero bytes.
+     * The first 256 entries are the classic byte table.
+     */
+    private static final char[] TABLE = new char[SLICES * 256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int crc = b;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[b] = (char) crc;
+        }
+        for (int k = 1; k < SLICES; k++) {
+            for (int b = 0; b < 256; b++) {
+                int crc = TABLE[(k - 1) * 256 + b];
+                TABLE[k * 256 + b] = (char) ((crc >>> 8) ^ TABLE[crc & 0x00FF]);
+            }
+        }
+    }
+
     /**
      * Accumulate the X.25 CRC by adding one char at a time.
      * The checksum function adds the hash of one char at a time to the 16 bit checksum
@@ -51,35 +86,64 @@ public class MAVLinkCRC {
      * @return the new accumulated checksum
      */
     public static int crc_accumulate(byte data, int crc) {
-        int tmp, tmpdata;
-        int crcaccum = crc & 0x000000ff;
-        tmpdata = data & 0x000000ff;
-        tmp = tmpdata ^ crcaccum;
-        tmp &= 0x000000ff;
-        int tmp4 = tmp << 4;
-        tmp4 &= 0x000000ff;
-        tmp ^= tmp4;
-        tmp &= 0x000000ff;
-        int crch = crc >> 8;
-        crch &= 0x0000ffff;
-        int tmp8 = tmp << 8;
-        tmp8 &= 0x0000ffff;
-        int tmp3 = tmp << 3;
-        tmp3 &= 0x0000ffff;
-        tmp4 = tmp >> 4;
-        tmp4 &= 0x0000ffff;
-        int tmpa = crch ^ tmp8;
-        tmpa &= 0x0000ffff;
-        int tmpb = tmp3 ^ tmp4;
-        tmpb &= 0x0000ffff;
-        crc = tmpa ^ tmpb;
+        return ((crc >> 8) ^ TABLE[(crc ^ data) & 0x00FF]) & 0x0000ffff;
+    }
+
+    /**
+     * Accumulate the X.25 CRC on a range of a byte array, 8 bytes at a time.
+     * @param buffer byte array to hash
+     * @param offset position of the first byte
+     * @param length number of bytes
+     * @param crc the already accumulated checksum, crc_init() for a new one
+     * @return the new accumulated checksum
+     */
+    public static int crc_accumulate(byte[] buffer, int offset, int length, int crc) {
         crc &= 0x0000ffff;
+        int end = offset + length;
+        for (; offset <= end - SLICES; offset += SLICES) {
+            int x = crc ^ (buffer[offset] & 0x00FF) ^ ((buffer[offset + 1] & 0x00FF) << 8);
+            crc = TABLE[7 * 256 + (x & 0x00FF)] ^ TABLE[6 * 256 + (x >>> 8)] ^ TABLE[5 * 256 + (buffer[offset + 2] & 0x00FF)]
+                  ^ TABLE[4 * 256 + (buffer[offset + 3] & 0x00FF)] ^ TABLE[3 * 256 + (buffer[offset + 4] & 0x00FF)]
+                  ^ TABLE[2 * 256 + (buffer[offset + 5] & 0x00FF)] ^ TABLE[256 + (buffer[offset + 6] & 0x00FF)]
+                  ^ TABLE[buffer[offset + 7] & 0x00FF];
+        }
+        for (; offset < end; offset++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buffer[offset]) & 0x00FF];
+        }
+        return crc;
+    }
+
+    /**
+     * Accumulate the X.25 CRC on a range of a ByteBuffer, heap or direct, without changing its position.
+     * Direct buffers are read 8 bytes at a time with one getLong.
+     * @param buffer buffer to hash
+     * @param offset absolute position of the first byte
+     * @param length number of bytes
+     * @param crc the already accumulated checksum, crc_init() for a new one
+     * @return the new accumulated checksum
+     */
+    public static int crc_accumulate(ByteBuffer buffer, int offset, int length, int crc) {
+        if (buffer.hasArray()) {
+            return crc_accumulate(buffer.array(), buffer.arrayOffset() + offset, length, crc);
+        }
+        crc &= 0x0000ffff;
+        int end = offset + length;
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        for (; offset <= end - SLICES; offset += SLICES) {
+            long v = buffer.getLong(offset);
+            if (bigEndian) {
+                v = Long.reverseBytes(v);
+            }
+            int x = crc ^ ((int) v & 0x00FFFF);
+            crc = TABLE[7 * 256 + (x & 0x00FF)] ^ TABLE[6 * 256 + (x >>> 8)] ^ TABLE[5 * 256 + ((int) (v >>> 16) & 0x00FF)]
+                  ^ TABLE[4 * 256 + ((int) (v >>> 24) & 0x00FF)] ^ TABLE[3 * 256 + ((int) (v >>> 32) & 0x00FF)]
+                  ^ TABLE[2 * 256 + ((int) (v >>> 40) & 0x00FF)] ^ TABLE[256 + ((int) (v >>> 48) & 0x00FF)]
+                  ^ TABLE[(int) (v >>> 56) & 0x00FF];
+        }
+        for (; offset < end; offset++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buffer.get(offset)) & 0x00FF];
+        }
         return crc;
-        /*
-        byte ch = (byte) (data ^ (byte) (crc & 0x00ff));
-        ch = (byte) (ch ^ (ch << 4));
-        return ((crc >> 8) ^ (ch << 8) ^ (ch << 3) ^ (ch >> 4));
-        */
     }
 
     /**
@@ -97,25 +161,17 @@ public class MAVLinkCRC {
      * @return the accumulated checksum
      */
     public static int crc_calculate_decode(byte[] buffer, int dataLength) {
-        int crc = crc_init();
-        for (int i = 1; i <= dataLength + IMAVLinkMessage.CRC_LEN; i++) {
-            crc = crc_accumulate(buffer[i], crc);
-        }
-        return crc;
+        return crc_accumulate(buffer, 1, dataLength + IMAVLinkMessage.CRC_LEN, crc_init());
     }
 
     /**
      * Calculates the X.25 checksum to encode a MAVLink message stored in a byte buffer and begins after the MAVLink Packet start
      * @param buffer buffer containing the byte array to hash
-     * @param dataLength total length of the MAVLink message so CRC is calculate between 1 and length - 2
+     * @param length length of the payload so CRC is calculated from 1 to 1 + payload + 5 excluded, as in crc_calculate_decode
      * @return the accumulated checksum
      */
     public static int crc_calculate_encode(byte[] buffer, int length) {
-        int crc = crc_init();
-        for (int i = 1; i < buffer.length - 2; i++) {
-            crc = crc_accumulate(buffer[i], crc);
-        }
-        return crc;
+        return crc_accumulate(buffer, 1, length + IMAVLinkMessage.CRC_LEN, crc_init());
     }
 
     /**
@@ -124,11 +180,7 @@ public class MAVLinkCRC {
      * @return the accumulated checksum
      */
     public static int crc_calculate(byte[] buffer) {
-        int crc = crc_init();
-        for (int i = 0; i < buffer.length; i++) {
-            crc = crc_accumulate(buffer[i], crc);
-        }
-        return crc;
+        return crc_accumulate(buffer, 0, buffer.length, crc_init());
     }
 
 }
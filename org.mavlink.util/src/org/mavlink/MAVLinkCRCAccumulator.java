@@ -0,0 +1,71 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.MAVLinkCRCAccumulator.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming X.25 CRC of a MAVLink frame, fed by bytes or ranges as they are received.
+ * An accumulator is reset and reused for each frame.
+ * @version $Rev$
+ *
+ */
+public class MAVLinkCRCAccumulator {
+
+    private int crc = MAVLinkCRC.crc_init();
+
+    /**
+     * Start a new checksum
+     */
+    public void reset() {
+        crc = MAVLinkCRC.crc_init();
+    }
+
+    /**
+     * Add one byte
+     * @param data byte to hash
+     */
+    public void update(byte data) {
+        crc = MAVLinkCRC.crc_accumulate(data, crc);
+    }
+
+    /**
+     * Add a range of a byte array
+     * @param buffer byte array to hash
+     * @param offset position of the first byte
+     * @param length number of bytes
+     */
+    public void update(byte[] buffer, int offset, int length) {
+        crc = MAVLinkCRC.crc_accumulate(buffer, offset, length, crc);
+    }
+
+    /**
+     * Add a range of a ByteBuffer, without changing its position
+     * @param buffer buffer to hash
+     * @param offset absolute position of the first byte
+     * @param length number of bytes
+     */
+    public void update(ByteBuffer buffer, int offset, int length) {
+        crc = MAVLinkCRC.crc_accumulate(buffer, offset, length, crc);
+    }
+
+    /**
+     * @return the 16 bit checksum of bytes added since the last reset
+     */
+    public int getValue() {
+        return crc;
+    }
+
+}
@@ -0,0 +1,456 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.MAVLinkFrameParser.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Push parser of MAVLink 1 and MAVLink 2 frames.
+ * Chunks of any size, as returned by a serial port or a socket, are given to feed. Complete frames with a valid CRC are given
+ * to the listener, in the parser buffer, without blocking and without intermediate stream. Bytes of an incomplete frame are kept
+ * for the next chunk. Start bytes are searched 8 bytes at a time. After a bad CRC, the search of a frame start begins again at
+ * the byte following the bad start byte, so a frame hidden in garbage or in a corrupted frame is not lost.
+ * A parser is not thread safe : feed it from one thread.
+ * @version $Rev$
+ *
+ */
+public class MAVLinkFrameParser {
+
+    /**
+     * Biggest frame : MAVLink 2 header, 255 bytes of payload, crc and signature
+     */
+    public final static int MAX_FRAME_LEN = 10 + 255 + 2 + IMAVLinkMessage.SIGNATURE_LEN;
+
+    private final IMAVLinkFrameListener listener;
+
+    /**
+     * Extra crc of message ids below 256
+     */
+    private final char[] crcExtras = new char[256];
+
+    private final boolean[] known = new boolean[256];
+
+    /**
+     * Sorted message ids above 255 of MAVLink 2 and their extra crc
+     */
+    private final int[] bigIds;
+
+    private final char[] bigCrcExtras;
+
+    private final static long ONES = 0x0101010101010101L;
+
+    private final static long HIGHS = 0x8080808080808080L;
+
+    private final static long STARTS_V10 = ONES * (IMAVLinkMessage.MAVPROT_PACKET_START_V10 & 0x00FF);
+
+    private final static long STARTS_V20 = ONES * (IMAVLinkMessage.MAVPROT_PACKET_START_V20 & 0x00FF);
+
+    /**
+     * Bytes received and not parsed yet, from start to end
+     */
+    private final byte[] buffer;
+
+    /**
+     * Little endian view of buffer to read it 8 bytes at a time
+     */
+    private final ByteBuffer words;
+
+    private int start = 0;
+
+    private int end = 0;
+
+    private long totalBytes = 0;
+
+    private long frames = 0;
+
+    private long badCRC = 0;
+
+    private long lostBytes = 0;
+
+    private long skipped = 0;
+
+    /**
+     * Messages given to the listener, all if null
+     */
+    private volatile MAVLinkSubscription subscription = null;
+
+    private volatile boolean checkSkippedCRC = true;
+
+    /**
+     * Counters by message id and by stream, none if null
+     */
+    private volatile MAVLinkStatistics statistics = null;
+
+    /**
+     * Parser of a MAVLink 1 dialect
+     * @param crcs extra crc indexed by message id, IMAVLinkCRC.MAVLINK_MESSAGE_CRCS
+     * @param listener receiver of valid frames
+     */
+    public MAVLinkFrameParser(char[] crcs, IMAVLinkFrameListener listener) {
+        this(null, crcs, listener);
+    }
+
+    /**
+     * Parser of a MAVLink 2 dialect
+     * @param ids sorted message ids, IMAVLinkCRC.MAVLINK_MESSAGE_IDS, or null if crcs are indexed by message id
+     * @param crcs extra crc of ids, IMAVLinkCRC.MAVLINK_MESSAGE_IDS_CRCS
+     * @param listener receiver of valid frames
+     */
+    public MAVLinkFrameParser(int[] ids, char[] crcs, IMAVLinkFrameListener listener) {
+        this.listener = listener;
+        this.buffer = new byte[16 * MAX_FRAME_LEN];
+        this.words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        int nbBig = 0;
+        for (int i = 0; i < crcs.length; i++) {
+            int id = ids == null ? i : ids[i];
+            if (id < 256) {
+                crcExtras[id] = crcs[i];
+                known[id] = true;
+            }
+            else {
+                nbBig++;
+            }
+        }
+        bigIds = new int[nbBig];
+        bigCrcExtras = new char[nbBig];
+        nbBig = 0;
+        for (int i = 0; i < crcs.length; i++) {
+            int id = ids == null ? i : ids[i];
+            if (id >= 256) {
+                bigIds[nbBig] = id;
+                bigCrcExtras[nbBig++] = crcs[i];
+            }
+        }
+    }
+
+    /**
+     * Parse a chunk of received bytes, received now
+     * @param data received bytes
+     * @param offset position of the first byte
+     * @param length number of bytes
+     */
+    public void feed(byte[] data, int offset, int length) {
+        feed(data, offset, length, statistics == null ? 0 : System.nanoTime());
+    }
+
+    /**
+     * Parse a chunk of received bytes. Frames completed by the chunk are counted in the statistics at its time of reception :
+     * intervals between frames have the resolution of chunks.
+     * @param data received bytes
+     * @param offset position of the first byte
+     * @param length number of bytes
+     * @param now time of reception of the chunk in nanoseconds, System.nanoTime() in the serial event
+     */
+    public void feed(byte[] data, int offset, int length, long now) {
+        while (length > 0) {
+            int n = Math.min(length, buffer.length - end);
+            System.arraycopy(data, offset, buffer, end, n);
+            end += n;
+            offset += n;
+            length -= n;
+            parse(now);
+        }
+    }
+
+    /**
+     * Parse the remaining bytes of a chunk, heap or direct, received now. Position of data is moved to its limit.
+     * @param data received bytes
+     */
+    public void feed(ByteBuffer data) {
+        feed(data, statistics == null ? 0 : System.nanoTime());
+    }
+
+    /**
+     * Parse the remaining bytes of a chunk, heap or direct. Position of data is moved to its limit.
+     * @param data received bytes
+     * @param now time of reception of the chunk in nanoseconds, System.nanoTime() in the serial event
+     */
+    public void feed(ByteBuffer data, long now) {
+        while (data.hasRemaining()) {
+            int n = Math.min(data.remaining(), buffer.length - end);
+            data.get(buffer, end, n);
+            end += n;
+            parse(now);
+        }
+    }
+
+    /**
+     * Give all complete frames from start to end to the listener and keep the last incomplete one
+     * @param now time of reception of the last bytes in nanoseconds
+     */
+    private void parse(long now) {
+        totalBytes += end - start;
+        int pos = start;
+        MAVLinkStatistics stats = statistics;
+        while (true) {
+            int found = indexOfStart(pos, end);
+            lostBytes += found - pos;
+            pos = found;
+            if (end - pos < 3) {
+                break;
+            }
+            int len = buffer[pos + 1] & 0x00FF;
+            boolean v2 = buffer[pos] == IMAVLinkMessage.MAVPROT_PACKET_START_V20;
+            int headerLen = v2 ? 10 : 6;
+            int frameLen = headerLen + len + 2;
+            if (v2) {
+                int incompat = buffer[pos + 2] & 0x00FF;
+                if ((incompat & ~IMAVLinkMessage.MAVLINK_IFLAG_SIGNED) != 0) {
+                    // unknown incompatibility flag : frame can't be understood
+                    badCRC++;
+                    lostBytes++;
+                    pos++;
+                    continue;
+                }
+                if (incompat != 0) {
+                    frameLen += IMAVLinkMessage.SIGNATURE_LEN;
+                }
+            }
+            if (end - pos < frameLen) {
+                break;
+            }
+            int msgid = v2 ? (buffer[pos + 7] & 0x00FF) | (buffer[pos + 8] & 0x00FF) << 8 | (buffer[pos + 9] & 0x00FF) << 16 : buffer[pos + 5] & 0x00FF;
+            int sysId = buffer[pos + (v2 ? 5 : 3)] & 0x00FF;
+            int componentId = buffer[pos + (v2 ? 6 : 4)] & 0x00FF;
+            MAVLinkSubscription filter = subscription;
+            boolean accepted = filter == null || filter.accepts(msgid, sysId, componentId);
+            if (!accepted && !checkSkippedCRC) {
+                // trust the header : the whole frame is skipped without computing its crc
+                if (stats != null && getCrcExtra(msgid) >= 0) {
+                    stats.uncheckedFrame(msgid, sysId, componentId, buffer[pos + (v2 ? 4 : 2)] & 0x00FF, frameLen, now);
+                }
+                skipped++;
+                pos += frameLen;
+                continue;
+            }
+            int extra = getCrcExtra(msgid);
+            boolean valid = false;
+            if (extra >= 0) {
+                int crc = MAVLinkCRC.crc_accumulate(buffer, pos + 1, headerLen - 1 + len, MAVLinkCRC.crc_init());
+                crc = MAVLinkCRC.crc_accumulate((byte) extra, crc);
+                valid = (crc & 0x00FF) == (buffer[pos + headerLen + len] & 0x00FF) && (crc >> 8) == (buffer[pos + headerLen + len + 1] & 0x00FF);
+            }
+            if (stats != null && valid) {
+                stats.frame(msgid, sysId, componentId, buffer[pos + (v2 ? 4 : 2)] & 0x00FF, frameLen, now);
+            }
+            else if (stats != null && extra >= 0) {
+                stats.crcFailure(msgid, sysId, componentId);
+            }
+            if (valid && !accepted) {
+                skipped++;
+                pos += frameLen;
+            }
+            else if (valid) {
+                frames++;
+                listener.onFrame(buffer, pos, frameLen);
+                pos += frameLen;
+            }
+            else {
+                // the start byte was not a frame start or the frame is corrupted : search again after it
+                badCRC++;
+                lostBytes++;
+                pos++;
+            }
+        }
+        totalBytes -= end - pos;
+        if (pos == end) {
+            start = 0;
+            end = 0;
+        }
+        else if (end == buffer.length) {
+            System.arraycopy(buffer, pos, buffer, 0, end - pos);
+            end -= pos;
+            start = 0;
+        }
+        else {
+            start = pos;
+        }
+    }
+
+    /**
+     * Search the first start byte of MAVLink 1 or MAVLink 2 between from and to.
+     * Each word of 8 bytes is xored with the start byte repeated, so a start byte becomes a zero byte, found without branch by
+     * (x - 0x01..01) & ~x & 0x80..80. Only the lowest flagged byte is exact, which is the one used.
+     * @return position of the start byte, to if there is none
+     */
+    private int indexOfStart(int from, int to) {
+        int i = from;
+        for (; i <= to - 8; i += 8) {
+            long v = words.getLong(i);
+            long v1 = v ^ STARTS_V10;
+            long v2 = v ^ STARTS_V20;
+            long found = ((v1 - ONES) & ~v1 | (v2 - ONES) & ~v2) & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer[i] == IMAVLinkMessage.MAVPROT_PACKET_START_V10 || buffer[i] == IMAVLinkMessage.MAVPROT_PACKET_START_V20) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return extra crc of a message id, -1 if id is unknown
+     */
+    private int getCrcExtra(int msgid) {
+        if (msgid < 256) {
+            return known[msgid] ? crcExtras[msgid] : -1;
+        }
+        int low = 0, high = bigIds.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (bigIds[middle] < msgid) {
+                low = middle + 1;
+            }
+            else if (bigIds[middle] > msgid) {
+                high = middle - 1;
+            }
+            else {
+                return bigCrcExtras[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Give to the listener only the frames accepted by a subscription. The subscription can be changed while frames are parsed.
+     * @param subscription message ids to receive, null to receive all frames
+     */
+    public void setSubscription(MAVLinkSubscription subscription) {
+        this.subscription = subscription;
+    }
+
+    public MAVLinkSubscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Count frames by message id and by stream. Times of arrival are taken once by chunk given to feed.
+     * @param statistics counters updated by the parser, null to stop counting
+     */
+    public void setStatistics(MAVLinkStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public MAVLinkStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Check the crc of skipped frames, true by default.
+     * Without check, a skipped frame is not decoded at all but a false start byte in noise can hide the next frames.
+     * Statistics then count skipped frames from their unverified header : only frames of known message ids are counted,
+     * and only in streams which already had valid frames.
+     * @param checkSkippedCRC true to skip only frames with a valid crc
+     */
+    public void setCheckSkippedCRC(boolean checkSkippedCRC) {
+        this.checkSkippedCRC = checkSkippedCRC;
+    }
+
+    /**
+     * Forget bytes of an incomplete frame, for example after a reconnection
+     */
+    public void reset() {
+        totalBytes += end - start;
+        lostBytes += end - start;
+        start = 0;
+        end = 0;
+    }
+
+    /**
+     * @return number of bytes parsed
+     */
+    public long getTotalBytesReceived() {
+        return totalBytes;
+    }
+
+    /**
+     * @return number of valid frames given to the listener
+     */
+    public long getNbMessagesReceived() {
+        return frames;
+    }
+
+    /**
+     * @return number of frames not subscribed
+     */
+    public long getNbMessagesSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return number of start bytes followed by a bad CRC
+     */
+    public long getBadCRC() {
+        return badCRC;
+    }
+
+    /**
+     * @return number of bytes outside valid frames
+     */
+    public long getLostBytes() {
+        return lostBytes;
+    }
+
+    /**
+     * @return message id of the frame at offset
+     */
+    public static int getMessageId(byte[] buffer, int offset) {
+        if (buffer[offset] == IMAVLinkMessage.MAVPROT_PACKET_START_V20) {
+            return (buffer[offset + 7] & 0x00FF) | (buffer[offset + 8] & 0x00FF) << 8 | (buffer[offset + 9] & 0x00FF) << 16;
+        }
+        return buffer[offset + 5] & 0x00FF;
+    }
+
+    /**
+     * @return sequence of the frame at offset
+     */
+    public static int getSequence(byte[] buffer, int offset) {
+        return buffer[offset + (buffer[offset] == IMAVLinkMessage.MAVPROT_PACKET_START_V20 ? 4 : 2)] & 0x00FF;
+    }
+
+    /**
+     * @return system id of the frame at offset
+     */
+    public static int getSysId(byte[] buffer, int offset) {
+        return buffer[offset + (buffer[offset] == IMAVLinkMessage.MAVPROT_PACKET_START_V20 ? 5 : 3)] & 0x00FF;
+    }
+
+    /**
+     * @return component id of the frame at offset
+     */
+    public static int getComponentId(byte[] buffer, int offset) {
+        return buffer[offset + (buffer[offset] == IMAVLinkMessage.MAVPROT_PACKET_START_V20 ? 6 : 4)] & 0x00FF;
+    }
+
+    /**
+     * @return position of the payload of the frame at offset
+     */
+    public static int getPayloadOffset(byte[] buffer, int offset) {
+        return offset + (buffer[offset] == IMAVLinkMessage.MAVPROT_PACKET_START_V20 ? 10 : 6);
+    }
+
+    /**
+     * @return payload length of the frame at offset, truncated in MAVLink 2
+     */
+    public static int getPayloadLength(byte[] buffer, int offset) {
+        return buffer[offset + 1] & 0x00FF;
+    }
+
+}
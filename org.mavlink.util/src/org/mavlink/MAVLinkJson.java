@@ -0,0 +1,218 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.MAVLinkJson.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Write JSON values in a ByteBuffer without allocation.
+ * Used by generated writeJson methods, with field names prefixes computed once per message class.
+ * @version $Rev$
+ *
+ */
+public class MAVLinkJson {
+
+    private static final byte[] NAME = bytes("{\"name\":\"");
+
+    private static final byte[] MSGID = bytes("\",\"msgid\":");
+
+    private static final byte[] SYSID = bytes(",\"sysid\":");
+
+    private static final byte[] COMPID = bytes(",\"compid\":");
+
+    private static final byte[] SEQ = bytes(",\"seq\":");
+
+    private static final byte[] NULL = bytes("null");
+
+    private static final byte[] HEX = bytes("0123456789abcdef");
+
+    /**
+     * Scratch buffer of each thread to format floating point values
+     */
+    private static final ThreadLocal<StringBuilder> scratch = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(32);
+        }
+    };
+
+    /**
+     * Convert an ASCII string in bytes
+     * @param value ASCII string
+     * @return bytes of the string
+     */
+    public static byte[] bytes(String value) {
+        byte[] result = new byte[value.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) value.charAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * Build the prefixes ,"name": of fields
+     * @param names fields names
+     * @return bytes of prefixes
+     */
+    public static byte[][] prefixes(String... names) {
+        byte[][] result = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = bytes(",\"" + names[i] + "\":");
+        }
+        return result;
+    }
+
+    /**
+     * Write the beginning of a message object, before its fields
+     * @param buf destination
+     * @param name bytes of the message name
+     * @param msgid message id
+     * @param sysId system id
+     * @param componentId component id
+     * @param sequence sequence
+     */
+    public static void putHeader(ByteBuffer buf, byte[] name, int msgid, int sysId, int componentId, int sequence) {
+        buf.put(NAME);
+        buf.put(name);
+        buf.put(MSGID);
+        putLong(buf, msgid);
+        buf.put(SYSID);
+        putLong(buf, sysId);
+        buf.put(COMPID);
+        putLong(buf, componentId);
+        buf.put(SEQ);
+        putLong(buf, sequence);
+    }
+
+    /**
+     * Write an integer value
+     * @param buf destination
+     * @param value value
+     */
+    public static void putLong(ByteBuffer buf, long value) {
+        if (value < 0) {
+            buf.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                buf.put(bytes("9223372036854775808"));
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buf.put((byte) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Write a float value, null if it is not a number
+     * @param buf destination
+     * @param value value
+     */
+    public static void putFloat(ByteBuffer buf, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            buf.put(NULL);
+            return;
+        }
+        StringBuilder sb = scratch.get();
+        sb.setLength(0);
+        sb.append(value);
+        putAscii(buf, sb);
+    }
+
+    /**
+     * Write a double value, null if it is not a number
+     * @param buf destination
+     * @param value value
+     */
+    public static void putDouble(ByteBuffer buf, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            buf.put(NULL);
+            return;
+        }
+        StringBuilder sb = scratch.get();
+        sb.setLength(0);
+        sb.append(value);
+        putAscii(buf, sb);
+    }
+
+    /**
+     * Write a char as a string
+     * @param buf destination
+     * @param value value, 0 for an empty string
+     */
+    public static void putChar(ByteBuffer buf, char value) {
+        buf.put((byte) '"');
+        if (value != 0) {
+            putEscaped(buf, value);
+        }
+        buf.put((byte) '"');
+    }
+
+    /**
+     * Write a char array as a string ending at the first 0 char
+     * @param buf destination
+     * @param value value
+     */
+    public static void putString(ByteBuffer buf, char[] value) {
+        buf.put((byte) '"');
+        for (int i = 0; i < value.length && value[i] != 0; i++) {
+            putEscaped(buf, value[i]);
+        }
+        buf.put((byte) '"');
+    }
+
+    /**
+     * Write a byte array of chars as a string ending at the first 0 byte
+     * @param buf destination
+     * @param value value
+     */
+    public static void putString(ByteBuffer buf, byte[] value) {
+        buf.put((byte) '"');
+        for (int i = 0; i < value.length && value[i] != 0; i++) {
+            putEscaped(buf, (char) (value[i] & 0x00FF));
+        }
+        buf.put((byte) '"');
+    }
+
+    private static void putEscaped(ByteBuffer buf, char c) {
+        if (c == '"' || c == '\\') {
+            buf.put((byte) '\\');
+            buf.put((byte) c);
+        }
+        else if (c < 0x20 || c > 0x7E) {
+            buf.put((byte) '\\');
+            buf.put((byte) 'u');
+            buf.put(HEX[(c >> 12) & 0x0F]);
+            buf.put(HEX[(c >> 8) & 0x0F]);
+            buf.put(HEX[(c >> 4) & 0x0F]);
+            buf.put(HEX[c & 0x0F]);
+        }
+        else {
+            buf.put((byte) c);
+        }
+    }
+
+    private static void putAscii(ByteBuffer buf, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            buf.put((byte) value.charAt(i));
+        }
+    }
+
+}
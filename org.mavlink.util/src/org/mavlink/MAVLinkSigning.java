@@ -0,0 +1,280 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.MAVLinkSigning.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+/**
+ * MAVLink 2 packet signing : signature is the first 6 bytes of
+ * SHA-256(secret key + header + payload + crc + link id + timestamp).
+ * Secret keys are kept per link id in SHA-256 words, ready for the first block of each frame.
+ * Timestamps sent on each link and last timestamps received on each stream (system id, component id, link id)
+ * are kept in primitive arrays, so signing and verifying do not allocate.
+ * An instance is not thread safe : use one for the reader and one for the writer.
+ * @version $Rev$
+ *
+ */
+public class MAVLinkSigning {
+
+    /**
+     * 1st January 2015 GMT in milliseconds, origin of MAVLink timestamps
+     */
+    public final static long TIMESTAMP_EPOCH_MS = 1420070400000L;
+
+    /**
+     * A new stream is accepted if its timestamp is less than one minute behind the local timestamp, in 10 microseconds units
+     */
+    public final static long REPLAY_WINDOW = 60L * 100000L;
+
+    /**
+     * Len of the MAVLink 2 header
+     */
+    private final static int HEADER_LEN = 10;
+
+    private final static int[] K = { 0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+                                    0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+                                    0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+                                    0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+                                    0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+                                    0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+                                    0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+                                    0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2 };
+
+    private final static int[] H0 = { 0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19 };
+
+    /**
+     * Secret key of each link id in 8 big endian words
+     */
+    private final int[] keyWords = new int[256 * 8];
+
+    private final boolean[] hasKey = new boolean[256];
+
+    /**
+     * Last timestamp sent on each link id
+     */
+    private final long[] sentTimestamps = new long[256];
+
+    /**
+     * Streams (system id << 16 | component id << 8 | link id) + 1, 0 for a free slot, and their last timestamp
+     */
+    private final int[] streams;
+
+    private final long[] streamTimestamps;
+
+    private final int mask;
+
+    /**
+     * Greatest timestamp received, local timestamp if the clock is late
+     */
+    private long lastTimestamp = 0;
+
+    /**
+     * Scratch message : secret key, then bytes of the frame and SHA-256 padding
+     */
+    private final byte[] message = new byte[32 + HEADER_LEN + 255 + 2 + 7 + 64 + 8];
+
+    private final int[] w = new int[64];
+
+    private final int[] h = new int[8];
+
+    /**
+     * @param capacity number of streams tracked to reject replayed packets, rounded to a power of 2
+     */
+    public MAVLinkSigning(int capacity) {
+        int size = 16;
+        while (size < capacity * 2) {
+            size <<= 1;
+        }
+        streams = new int[size];
+        streamTimestamps = new long[size];
+        mask = size - 1;
+    }
+
+    public MAVLinkSigning() {
+        this(64);
+    }
+
+    /**
+     * Set the secret key used on a link
+     * @param linkId link id
+     * @param secretKey 32 bytes key
+     */
+    public void setKey(int linkId, byte[] secretKey) {
+        if (secretKey.length != 32) {
+            throw new IllegalArgumentException("Secret key must have 32 bytes : " + secretKey.length);
+        }
+        for (int i = 0; i < 8; i++) {
+            keyWords[linkId * 8 + i] = getInt(secretKey, i * 4);
+        }
+        hasKey[linkId] = true;
+    }
+
+    /**
+     * Remove the secret key of a link, its packets are no more signed or verified
+     * @param linkId link id
+     */
+    public void removeKey(int linkId) {
+        for (int i = 0; i < 8; i++) {
+            keyWords[linkId * 8 + i] = 0;
+        }
+        hasKey[linkId] = false;
+    }
+
+    /**
+     * @return current time in MAVLink timestamp units : 10 microseconds since 1st January 2015 GMT
+     */
+    public static long timestampNow() {
+        return (System.currentTimeMillis() - TIMESTAMP_EPOCH_MS) * 100;
+    }
+
+    /**
+     * Append the signature of a MAVLink 2 frame. Frame must have been encoded with MAVLINK_IFLAG_SIGNED in its incompatibility flags
+     * and buffer must have SIGNATURE_LEN bytes free after the crc.
+     * Timestamps of a link always increase, even if several frames are signed in the same 10 microseconds.
+     * @param buffer frame buffer
+     * @param offset position of the frame start
+     * @param linkId link id
+     * @return length of the signed frame
+     */
+    public int sign(byte[] buffer, int offset, int linkId) {
+        if (!hasKey[linkId]) {
+            throw new IllegalStateException("No secret key for link " + linkId);
+        }
+        int len = buffer[offset + 1] & 0x00FF;
+        int signature = offset + HEADER_LEN + len + 2;
+        long timestamp = Math.max(timestampNow(), sentTimestamps[linkId] + 1);
+        sentTimestamps[linkId] = timestamp;
+        buffer[signature] = (byte) linkId;
+        for (int i = 0; i < 6; i++) {
+            buffer[signature + 1 + i] = (byte) (timestamp >>> (8 * i));
+        }
+        hash(buffer, offset, signature + 7 - offset, linkId);
+        for (int i = 0; i < 6; i++) {
+            buffer[signature + 7 + i] = (byte) (h[i >> 2] >>> (24 - 8 * (i & 3)));
+        }
+        return signature + IMAVLinkMessage.SIGNATURE_LEN - offset;
+    }
+
+    /**
+     * Verify the signature of a signed MAVLink 2 frame and reject timestamps already seen on its stream.
+     * Accepted timestamp becomes the last one of the stream.
+     * @param buffer frame buffer
+     * @param offset position of the frame start
+     * @return true if frame is signed with the key of its link and is not replayed
+     */
+    public boolean verify(byte[] buffer, int offset) {
+        if (buffer[offset] != IMAVLinkMessage.MAVPROT_PACKET_START_V20 || (buffer[offset + 2] & IMAVLinkMessage.MAVLINK_IFLAG_SIGNED) == 0) {
+            return false;
+        }
+        int len = buffer[offset + 1] & 0x00FF;
+        int signature = offset + HEADER_LEN + len + 2;
+        int linkId = buffer[signature] & 0x00FF;
+        if (!hasKey[linkId]) {
+            return false;
+        }
+        hash(buffer, offset, signature + 7 - offset, linkId);
+        int diff = 0;
+        for (int i = 0; i < 6; i++) {
+            diff |= buffer[signature + 7 + i] ^ (byte) (h[i >> 2] >>> (24 - 8 * (i & 3)));
+        }
+        if (diff != 0) {
+            return false;
+        }
+        long timestamp = 0;
+        for (int i = 0; i < 6; i++) {
+            timestamp |= (buffer[signature + 1 + i] & 0x00FFL) << (8 * i);
+        }
+        int stream = ((buffer[offset + 5] & 0x00FF) << 16 | (buffer[offset + 6] & 0x00FF) << 8 | linkId) + 1;
+        int slot = (stream * 0x9E3779B9 >>> 16) & mask;
+        for (int probe = 0; probe < streams.length && streams[slot] != 0 && streams[slot] != stream; probe++) {
+            slot = (slot + 1) & mask;
+        }
+        if (streams[slot] == stream) {
+            if (timestamp <= streamTimestamps[slot]) {
+                return false;
+            }
+        }
+        else {
+            lastTimestamp = Math.max(lastTimestamp, timestampNow());
+            if (timestamp + REPLAY_WINDOW < lastTimestamp) {
+                return false;
+            }
+            // when all slots are used the last probed stream is forgotten
+            streams[slot] = stream;
+        }
+        streamTimestamps[slot] = timestamp;
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        return true;
+    }
+
+    /**
+     * SHA-256 of the link secret key followed by length bytes of buffer at offset, result in h
+     */
+    private void hash(byte[] buffer, int offset, int length, int linkId) {
+        int total = 32 + length;
+        System.arraycopy(buffer, offset, message, 32, length);
+        message[total] = (byte) 0x80;
+        int end = (total + 8 + 64) & ~63;
+        for (int i = total + 1; i < end - 8; i++) {
+            message[i] = 0;
+        }
+        long bits = (long) total * 8;
+        for (int i = 0; i < 8; i++) {
+            message[end - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+        System.arraycopy(H0, 0, h, 0, 8);
+        for (int block = 0; block < end; block += 64) {
+            for (int i = 0; i < 16; i++) {
+                w[i] = block == 0 && i < 8 ? keyWords[linkId * 8 + i] : getInt(message, block + i * 4);
+            }
+            compress();
+        }
+    }
+
+    /**
+     * SHA-256 compression of the block in w[0..15] into h
+     */
+    private void compress() {
+        for (int i = 16; i < 64; i++) {
+            int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18) ^ (w[i - 15] >>> 3);
+            int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19) ^ (w[i - 2] >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+        int a = h[0], b = h[1], c = h[2], d = h[3], e = h[4], f = h[5], g = h[6], hh = h[7];
+        for (int i = 0; i < 64; i++) {
+            int t1 = hh + (Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25)) + ((e & f) ^ (~e & g)) + K[i] + w[i];
+            int t2 = (Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22)) + ((a & b) ^ (a & c) ^ (b & c));
+            hh = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+        h[0] += a;
+        h[1] += b;
+        h[2] += c;
+        h[3] += d;
+        h[4] += e;
+        h[5] += f;
+        h[6] += g;
+        h[7] += hh;
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return (buffer[offset] << 24) | ((buffer[offset + 1] & 0x00FF) << 16) | ((buffer[offset + 2] & 0x00FF) << 8) | (buffer[offset + 3] & 0x00FF);
+    }
+
+}
@@ -0,0 +1,347 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.MAVLinkStatistics.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Live statistics of received frames, by message id and by stream (system id, component id) :
+ * messages and bytes by second, totals, sequence gaps, CRC failures and histogram of the time between two frames.
+ * Counters are created on the first valid frame of a message id or of a stream. Frames whose header can't be trusted
+ * never create counters of a stream, so line noise can't fill the table of streams.
+ * Counters are only updated by one thread, the thread feeding MAVLinkFrameParser, and can be read by any thread
+ * without lock : a parser shared by several threads, or statistics shared by several parsers, give wrong counts.
+ * @version $Rev$
+ *
+ */
+public class MAVLinkStatistics {
+
+    /**
+     * Number of buckets of interval histograms. Bucket i counts intervals from 2^(i-1) to 2^i microseconds,
+     * the last bucket counts all longer intervals.
+     */
+    public final static int HISTOGRAM_SIZE = 24;
+
+    /**
+     * Counters of a message id or of a stream. Values are volatile so that other threads read them without lock,
+     * increments are not atomic since only the parser thread makes them.
+     */
+    public static class Counters {
+        private volatile long messages = 0;
+
+        private volatile long bytes = 0;
+
+        private volatile long crcFailures = 0;
+
+        private volatile long sequenceGaps = 0;
+
+        private final AtomicLongArray intervals = new AtomicLongArray(HISTOGRAM_SIZE);
+
+        /**
+         * Time of the last frame in nanoseconds, 0 before the first one
+         */
+        private long lastArrival = 0;
+
+        private int lastSequence = -1;
+
+        /**
+         * Second of the current rate window, messages and bytes counted in it, and in the previous second
+         */
+        private volatile long windowSecond = 0;
+
+        private volatile long windowMessages = 0;
+
+        private volatile long windowBytes = 0;
+
+        private volatile long lastSecondMessages = 0;
+
+        private volatile long lastSecondBytes = 0;
+
+        /**
+         * Count a frame. Frames of one chunk share the time of the chunk, only the interval before the first one
+         * goes in the histogram : its resolution is the time between two chunks.
+         */
+        void frame(int length, long now) {
+            messages++;
+            bytes += length;
+            if (lastArrival != 0 && now != lastArrival) {
+                long micros = (now - lastArrival) / 1000;
+                int bucket = Math.min(HISTOGRAM_SIZE - 1, 64 - Long.numberOfLeadingZeros(micros));
+                intervals.lazySet(bucket, intervals.get(bucket) + 1);
+            }
+            lastArrival = now;
+            long second = now / 1000000000L;
+            if (second != windowSecond) {
+                lastSecondMessages = second == windowSecond + 1 ? windowMessages : 0;
+                lastSecondBytes = second == windowSecond + 1 ? windowBytes : 0;
+                windowMessages = 0;
+                windowBytes = 0;
+                windowSecond = second;
+            }
+            windowMessages++;
+            windowBytes += length;
+        }
+
+        void sequence(int sequence) {
+            if (lastSequence >= 0) {
+                int gap = (sequence - lastSequence - 1) & 0x00FF;
+                if (gap != 0) {
+                    sequenceGaps += gap;
+                }
+            }
+            lastSequence = sequence;
+        }
+
+        void crcFailure() {
+            crcFailures++;
+        }
+
+        /**
+         * @return number of valid frames
+         */
+        public long getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return number of bytes of valid frames
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return number of frames with a bad CRC
+         */
+        public long getCrcFailures() {
+            return crcFailures;
+        }
+
+        /**
+         * @return number of frames missing according to sequence numbers, only counted by stream
+         */
+        public long getSequenceGaps() {
+            return sequenceGaps;
+        }
+
+        /**
+         * @return number of frames received during the last complete second
+         */
+        public long getMessageRate() {
+            long second = System.nanoTime() / 1000000000L;
+            long window = windowSecond;
+            return window == second ? lastSecondMessages : window == second - 1 ? windowMessages : 0;
+        }
+
+        /**
+         * @return number of bytes received during the last complete second
+         */
+        public long getByteRate() {
+            long second = System.nanoTime() / 1000000000L;
+            long window = windowSecond;
+            return window == second ? lastSecondBytes : window == second - 1 ? windowBytes : 0;
+        }
+
+        /**
+         * @return histogram of the intervals between two frames, bucket i from 2^(i-1) to 2^i microseconds
+         */
+        public long[] getIntervalHistogram() {
+            long[] histogram = new long[HISTOGRAM_SIZE];
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                histogram[i] = intervals.get(i);
+            }
+            return histogram;
+        }
+
+        public String toString() {
+            StringBuffer sb = new StringBuffer();
+            sb.append(getMessageRate()).append(" msg/s ").append(getByteRate()).append(" B/s total=").append(getMessages());
+            sb.append(" bytes=").append(getBytes()).append(" crc=").append(getCrcFailures()).append(" gaps=").append(getSequenceGaps());
+            long[] histogram = getIntervalHistogram();
+            sb.append(" intervals(us)=");
+            for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+                if (histogram[i] != 0) {
+                    sb.append(" <").append(1L << i).append(':').append(histogram[i]);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Counters of message ids by pages of 256 ids, one page for MAVLink 1 ids
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<Counters>> messagePages;
+
+    /**
+     * Counters of streams by pages of system id, indexed by component id
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<Counters>> streamPages = new AtomicReferenceArray<AtomicReferenceArray<Counters>>(256);
+
+    private final Counters total = new Counters();
+
+    /**
+     * Statistics of MAVLink 1 frames, message ids up to 255
+     */
+    public MAVLinkStatistics() {
+        this(false);
+    }
+
+    /**
+     * @param mavlink2 true to count 24 bits message ids of MAVLink 2, false for MAVLink 1 ids up to 255
+     */
+    public MAVLinkStatistics(boolean mavlink2) {
+        messagePages = new AtomicReferenceArray<AtomicReferenceArray<Counters>>(mavlink2 ? 1 << 16 : 1);
+    }
+
+    /**
+     * Count a valid frame
+     * @param msgid message id
+     * @param sysId system id
+     * @param componentId component id
+     * @param sequence sequence of the frame
+     * @param length length of the frame
+     * @param now time of reception in nanoseconds, System.nanoTime()
+     */
+    public void frame(int msgid, int sysId, int componentId, int sequence, int length, long now) {
+        total.frame(length, now);
+        Counters message = getOrCreateMessage(msgid);
+        if (message != null) {
+            message.frame(length, now);
+        }
+        Counters stream = getOrCreateStream(sysId, componentId);
+        stream.frame(length, now);
+        stream.sequence(sequence);
+    }
+
+    /**
+     * Count a frame skipped without checking its CRC. Its header is not verified, so it is only counted
+     * in the stream of its ids if this stream already had valid frames.
+     * @param msgid message id, known by the parser
+     */
+    public void uncheckedFrame(int msgid, int sysId, int componentId, int sequence, int length, long now) {
+        total.frame(length, now);
+        Counters message = getOrCreateMessage(msgid);
+        if (message != null) {
+            message.frame(length, now);
+        }
+        Counters stream = getStream(sysId, componentId);
+        if (stream != null) {
+            stream.frame(length, now);
+            stream.sequence(sequence);
+        }
+    }
+
+    /**
+     * Count a frame with a bad CRC. Ids come from a header which may be corrupted as well :
+     * the frame is only counted in the stream of its ids if this stream already had valid frames.
+     * @param msgid message id, known by the parser
+     */
+    public void crcFailure(int msgid, int sysId, int componentId) {
+        total.crcFailure();
+        Counters message = getOrCreateMessage(msgid);
+        if (message != null) {
+            message.crcFailure();
+        }
+        Counters stream = getStream(sysId, componentId);
+        if (stream != null) {
+            stream.crcFailure();
+        }
+    }
+
+    /**
+     * @return counters of all frames
+     */
+    public Counters getTotal() {
+        return total;
+    }
+
+    /**
+     * @return counters of a message id, null if no frame was received
+     */
+    public Counters getMessage(int msgid) {
+        if (msgid >>> 8 >= messagePages.length()) {
+            return null;
+        }
+        AtomicReferenceArray<Counters> page = messagePages.get(msgid >>> 8);
+        return page == null ? null : page.get(msgid & 0x00FF);
+    }
+
+    /**
+     * @return counters of a stream, null if no frame was received
+     */
+    public Counters getStream(int sysId, int componentId) {
+        AtomicReferenceArray<Counters> page = streamPages.get(sysId);
+        return page == null ? null : page.get(componentId);
+    }
+
+    /**
+     * @return text of counters of all message ids and streams
+     */
+    public String report() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("ALL ").append(total).append('\n');
+        for (int page = 0; page < messagePages.length(); page++) {
+            AtomicReferenceArray<Counters> counters = messagePages.get(page);
+            for (int i = 0; counters != null && i < 256; i++) {
+                if (counters.get(i) != null) {
+                    sb.append("MSG ").append(page << 8 | i).append(' ').append(counters.get(i)).append('\n');
+                }
+            }
+        }
+        for (int sysId = 0; sysId < streamPages.length(); sysId++) {
+            AtomicReferenceArray<Counters> counters = streamPages.get(sysId);
+            for (int i = 0; counters != null && i < 256; i++) {
+                if (counters.get(i) != null) {
+                    sb.append("SYS ").append(sysId).append(" COMP ").append(i).append(' ').append(counters.get(i)).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return counters of a message id, null if the id is beyond the pages
+     */
+    private Counters getOrCreateMessage(int msgid) {
+        if (msgid >>> 8 >= messagePages.length()) {
+            return null;
+        }
+        return getOrCreate(messagePages, msgid >>> 8, msgid & 0x00FF);
+    }
+
+    private Counters getOrCreateStream(int sysId, int componentId) {
+        return getOrCreate(streamPages, sysId, componentId);
+    }
+
+    /**
+     * Pages and counters are only created by the parser thread, the arrays publish them to readers
+     */
+    private static Counters getOrCreate(AtomicReferenceArray<AtomicReferenceArray<Counters>> pages, int page, int index) {
+        AtomicReferenceArray<Counters> counters = pages.get(page);
+        if (counters == null) {
+            counters = new AtomicReferenceArray<Counters>(256);
+            pages.set(page, counters);
+        }
+        Counters c = counters.get(index);
+        if (c == null) {
+            c = new Counters();
+            counters.set(index, c);
+        }
+        return c;
+    }
+
+}
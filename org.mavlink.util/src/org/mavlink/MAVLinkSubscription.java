@@ -0,0 +1,122 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.MAVLinkSubscription.java
+ *
+ * ====================================================================
+ * Licence: MAVLink LGPL
+ * ====================================================================
+ */
+
+package org.mavlink;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of message ids to receive, optionally from one system and one component.
+ * Frames of other messages are skipped by MAVLinkFrameParser after their header, before any decoding.
+ * Message ids are bits of an AtomicLongArray : the set can be changed by any thread while frames are parsed, without lock.
+ * @version $Rev$
+ *
+ */
+public class MAVLinkSubscription {
+
+    /**
+     * Any system id or any component id
+     */
+    public final static int ANY = -1;
+
+    private final AtomicLongArray bits;
+
+    private final int maxId;
+
+    /**
+     * Accepted system id << 16 | component id, 0x100 for any
+     */
+    private volatile int source = 0x100 << 16 | 0x100;
+
+    /**
+     * Subscription to message ids below 256
+     */
+    public MAVLinkSubscription() {
+        this(255);
+    }
+
+    /**
+     * @param maxId greatest message id which can be subscribed, IMAVLinkCRC.MAVLINK_MESSAGE_IDS of the last message in MAVLink 2
+     */
+    public MAVLinkSubscription(int maxId) {
+        this.maxId = maxId;
+        bits = new AtomicLongArray((maxId >> 6) + 1);
+    }
+
+    /**
+     * Receive a message id
+     */
+    public void subscribe(int msgid) {
+        check(msgid);
+        long bit = 1L << msgid;
+        long old;
+        do {
+            old = bits.get(msgid >> 6);
+        } while ((old & bit) == 0 && !bits.compareAndSet(msgid >> 6, old, old | bit));
+    }
+
+    /**
+     * Skip a message id
+     */
+    public void unsubscribe(int msgid) {
+        check(msgid);
+        long bit = 1L << msgid;
+        long old;
+        do {
+            old = bits.get(msgid >> 6);
+        } while ((old & bit) != 0 && !bits.compareAndSet(msgid >> 6, old, old & ~bit));
+    }
+
+    /**
+     * Skip all message ids
+     */
+    public void clear() {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, 0);
+        }
+    }
+
+    /**
+     * Receive messages only from a system and a component
+     * @param sysId system id, ANY for all systems
+     * @param componentId component id, ANY for all components
+     */
+    public void setSource(int sysId, int componentId) {
+        source = (sysId == ANY ? 0x100 : sysId & 0x00FF) << 16 | (componentId == ANY ? 0x100 : componentId & 0x00FF);
+    }
+
+    public boolean isSubscribed(int msgid) {
+        return msgid >= 0 && msgid <= maxId && (bits.get(msgid >> 6) & (1L << msgid)) != 0;
+    }
+
+    /**
+     * @return true if a frame with these ids must be received
+     */
+    public boolean accepts(int msgid, int sysId, int componentId) {
+        if (!isSubscribed(msgid)) {
+            return false;
+        }
+        int s = source;
+        int acceptedSysId = s >>> 16;
+        int acceptedComponentId = s & 0x0FFFF;
+        return (acceptedSysId == 0x100 || acceptedSysId == sysId) && (acceptedComponentId == 0x100 || acceptedComponentId == componentId);
+    }
+
+    private void check(int msgid) {
+        if (msgid < 0 || msgid > maxId) {
+            throw new IllegalArgumentException("Message id out of subscription : " + msgid);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.test.MAVLinkCRCBenchmark.java
+ *
+ * ====================================================================
+ * Licence: ${licence}
+ * ====================================================================
+ */
+
+package org.mavlink.test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.mavlink.MAVLinkCRC;
+
+/**
+ * Throughput of the bit by bit CRC, the byte table and the slice-by-8 range CRC, on frames of usual sizes.
+ * Run with java org.mavlink.test.MAVLinkCRCBenchmark [seconds by case].
+ * @version $Rev$
+ *
+ */
+public class MAVLinkCRCBenchmark {
+
+    private static final int[] SIZES = { 17, 36, 263 };
+
+    /**
+     * Result of each run, printed so the JIT cannot remove the computation
+     */
+    private static int sink;
+
+    private interface Case {
+        int run(byte[] buffer, ByteBuffer direct);
+    }
+
+    public static void main(String[] args) {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 2;
+        String[] names = { "bitwise", "table", "slice-by-8", "direct" };
+        Case[] cases = { new Case() {
+            public int run(byte[] buffer, ByteBuffer direct) {
+                return MAVLinkCRCTest.reference(buffer, 0, buffer.length, MAVLinkCRC.crc_init());
+            }
+        }, new Case() {
+            public int run(byte[] buffer, ByteBuffer direct) {
+                int crc = MAVLinkCRC.crc_init();
+                for (int i = 0; i < buffer.length; i++) {
+                    crc = MAVLinkCRC.crc_accumulate(buffer[i], crc);
+                }
+                return crc;
+            }
+        }, new Case() {
+            public int run(byte[] buffer, ByteBuffer direct) {
+                return MAVLinkCRC.crc_accumulate(buffer, 0, buffer.length, MAVLinkCRC.crc_init());
+            }
+        }, new Case() {
+            public int run(byte[] buffer, ByteBuffer direct) {
+                return MAVLinkCRC.crc_accumulate(direct, 0, buffer.length, MAVLinkCRC.crc_init());
+            }
+        } };
+        for (int size : SIZES) {
+            byte[] buffer = new byte[size];
+            new Random(size).nextBytes(buffer);
+            ByteBuffer direct = ByteBuffer.allocateDirect(size);
+            direct.put(buffer);
+            for (int c = 0; c < cases.length; c++) {
+                // warm up then measure
+                measure(cases[c], buffer, direct, seconds * 1000 / 2);
+                double rate = measure(cases[c], buffer, direct, seconds * 1000);
+                System.out.println(size + " bytes " + names[c] + " : " + (long) (rate * size / 1000000) + " MB/s");
+            }
+        }
+        System.out.println(sink == 0 ? "" : "done");
+    }
+
+    /**
+     * @return number of frames by second
+     */
+    private static double measure(Case c, byte[] buffer, ByteBuffer direct, long millis) {
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000;
+        long now;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                sink += c.run(buffer, direct);
+            }
+            count += 1000;
+            now = System.nanoTime();
+        } while (now < end);
+        return count * 1e9 / (now - start);
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.test.MAVLinkCRCTest.java
+ *
+ * ====================================================================
+ * Licence: ${licence}
+ * ====================================================================
+ */
+
+package org.mavlink.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mavlink.MAVLinkCRC;
+import org.mavlink.MAVLinkCRCAccumulator;
+
+/**
+ * Compare table driven CRC with the bit by bit X.25 CRC
+ * @version $Rev$
+ *
+ */
+public class MAVLinkCRCTest {
+
+    /**
+     * Bit by bit X.25 CRC, as MAVLinkCRC computed it before tables
+     */
+    static int reference(byte data, int crc) {
+        int tmp = (data ^ crc) & 0x00FF;
+        tmp = (tmp ^ (tmp << 4)) & 0x00FF;
+        return (((crc >> 8) & 0x00FFFF) ^ (tmp << 8) ^ (tmp << 3) ^ (tmp >> 4)) & 0x00FFFF;
+    }
+
+    static int reference(byte[] buffer, int offset, int length, int crc) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = reference(buffer[i], crc);
+        }
+        return crc;
+    }
+
+    @Test
+    public void testAccumulateByte() {
+        for (int crc = 0; crc <= 0x00FFFF; crc += 7) {
+            for (int b = 0; b < 256; b++) {
+                assertEquals(reference((byte) b, crc), MAVLinkCRC.crc_accumulate((byte) b, crc));
+            }
+        }
+    }
+
+    @Test
+    public void testKnownValue() {
+        // check value of CRC-16/MCRF4XX
+        assertEquals(0x6F91, MAVLinkCRC.crc_calculate(MAVLinkCRC.stringToByte("123456789")));
+    }
+
+    @Test
+    public void testRanges() {
+        Random random = new Random(1);
+        byte[] buffer = new byte[300];
+        random.nextBytes(buffer);
+        ByteBuffer direct = ByteBuffer.allocateDirect(buffer.length);
+        direct.put(buffer);
+        for (int offset = 0; offset < 20; offset++) {
+            for (int length = 0; length < 280; length++) {
+                int seed = random.nextInt(0x010000);
+                int expected = reference(buffer, offset, length, seed);
+                assertEquals(expected, MAVLinkCRC.crc_accumulate(buffer, offset, length, seed));
+                assertEquals(expected, MAVLinkCRC.crc_accumulate(ByteBuffer.wrap(buffer), offset, length, seed));
+                direct.order(length % 2 == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                assertEquals(expected, MAVLinkCRC.crc_accumulate(direct, offset, length, seed));
+            }
+        }
+    }
+
+    @Test
+    public void testFrames() {
+        byte[] frame = new byte[8 + 28];
+        new Random(2).nextBytes(frame);
+        int expected = reference(frame, 1, frame.length - 3, MAVLinkCRC.crc_init());
+        assertEquals(expected, MAVLinkCRC.crc_calculate_encode(frame, 28));
+        assertEquals(expected, MAVLinkCRC.crc_calculate_decode(frame, 28));
+        // length is the payload length, whatever the buffer size
+        byte[] larger = new byte[frame.length + 10];
+        System.arraycopy(frame, 0, larger, 0, frame.length);
+        assertEquals(expected, MAVLinkCRC.crc_calculate_encode(larger, 28));
+    }
+
+    @Test
+    public void testAccumulator() {
+        byte[] buffer = new byte[100];
+        new Random(3).nextBytes(buffer);
+        MAVLinkCRCAccumulator accumulator = new MAVLinkCRCAccumulator();
+        accumulator.update(buffer[0]);
+        accumulator.update(buffer, 1, 40);
+        accumulator.update(ByteBuffer.wrap(buffer), 41, 59);
+        assertEquals(reference(buffer, 0, 100, MAVLinkCRC.crc_init()), accumulator.getValue());
+        accumulator.reset();
+        assertEquals(MAVLinkCRC.crc_init(), accumulator.getValue());
+    }
+
+}
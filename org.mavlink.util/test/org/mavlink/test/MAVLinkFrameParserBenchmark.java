@@ -0,0 +1,175 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.test.MAVLinkFrameParserBenchmark.java
+ *
+ * ====================================================================
+ * Licence: ${licence}
+ * ====================================================================
+ */
+
+package org.mavlink.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.mavlink.IMAVLinkFrameListener;
+import org.mavlink.IMAVLinkMessage;
+import org.mavlink.MAVLinkCRC;
+import org.mavlink.MAVLinkFrameParser;
+
+/**
+ * Frames recovered and frames by second on a noisy stream with truncated frames and bit flips,
+ * for a stream reader reading byte by byte and dropping a whole frame on a bad CRC, as MAVLinkReader does,
+ * and for MAVLinkFrameParser.
+ * Run with java org.mavlink.test.MAVLinkFrameParserBenchmark [seconds by case].
+ * @version $Rev$
+ *
+ */
+public class MAVLinkFrameParserBenchmark {
+
+    /**
+     * Frames received, printed so the JIT cannot remove the parsing
+     */
+    private static long sink;
+
+    private interface Case {
+        /**
+         * @return number of frames recovered in data
+         */
+        long run(byte[] data) throws IOException;
+    }
+
+    /**
+     * Pull reader reading the stream byte by byte.
+     * After a bad CRC the whole frame is lost and the search starts again after it.
+     */
+    private static class StreamReader {
+        private final DataInputStream dis;
+
+        private final byte[] frame = new byte[MAVLinkFrameParser.MAX_FRAME_LEN];
+
+        StreamReader(DataInputStream dis) {
+            this.dis = dis;
+        }
+
+        /**
+         * @return length of the next valid frame read in frame
+         */
+        int next() throws IOException {
+            while (true) {
+                byte start = dis.readByte();
+                if (start != IMAVLinkMessage.MAVPROT_PACKET_START_V10 && start != IMAVLinkMessage.MAVPROT_PACKET_START_V20) {
+                    continue;
+                }
+                boolean v2 = start == IMAVLinkMessage.MAVPROT_PACKET_START_V20;
+                int headerLen = v2 ? 10 : 6;
+                frame[0] = start;
+                for (int i = 1; i < headerLen; i++) {
+                    frame[i] = dis.readByte();
+                }
+                int len = frame[1] & 0x00FF;
+                boolean signed = v2 && (frame[2] & IMAVLinkMessage.MAVLINK_IFLAG_SIGNED) != 0;
+                int frameLen = headerLen + len + 2 + (signed ? IMAVLinkMessage.SIGNATURE_LEN : 0);
+                dis.readFully(frame, headerLen, frameLen - headerLen);
+                int msgid = v2 ? (frame[7] & 0x00FF) | (frame[8] & 0x00FF) << 8 | (frame[9] & 0x00FF) << 16 : frame[5] & 0x00FF;
+                int index = -1;
+                for (int i = 0; i < MAVLinkFrameParserTest.IDS.length; i++) {
+                    if (MAVLinkFrameParserTest.IDS[i] == msgid) {
+                        index = i;
+                    }
+                }
+                if (index < 0) {
+                    continue;
+                }
+                int crc = MAVLinkCRC.crc_init();
+                for (int i = 1; i < headerLen + len; i++) {
+                    crc = MAVLinkCRC.crc_accumulate(frame[i], crc);
+                }
+                crc = MAVLinkCRC.crc_accumulate((byte) MAVLinkFrameParserTest.CRCS[index], crc);
+                if ((crc & 0x00FF) == (frame[headerLen + len] & 0x00FF) && (crc >> 8) == (frame[headerLen + len + 1] & 0x00FF)) {
+                    return frameLen;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 2;
+        List<byte[]> intact = new ArrayList<byte[]>();
+        byte[] fuzz = MAVLinkFrameParserTest.fuzz(new Random(0), 10000, intact);
+        // zeros at the end complete the frames announced by false start bytes of the last frames
+        byte[] data = new byte[fuzz.length + MAVLinkFrameParser.MAX_FRAME_LEN];
+        System.arraycopy(fuzz, 0, data, 0, fuzz.length);
+        String[] names = { "stream reader", "frame parser" };
+        Case[] cases = { new Case() {
+            public long run(byte[] data) throws IOException {
+                StreamReader reader = new StreamReader(new DataInputStream(new ByteArrayInputStream(data)));
+                long frames = 0;
+                try {
+                    while (true) {
+                        reader.next();
+                        frames++;
+                    }
+                }
+                catch (EOFException e) {
+                    return frames;
+                }
+            }
+        }, new Case() {
+            final long[] frames = new long[1];
+
+            final MAVLinkFrameParser parser = new MAVLinkFrameParser(MAVLinkFrameParserTest.IDS, MAVLinkFrameParserTest.CRCS,
+                                                                     new IMAVLinkFrameListener() {
+                                                                         public void onFrame(byte[] buffer, int offset, int length) {
+                                                                             frames[0]++;
+                                                                         }
+                                                                     });
+
+            public long run(byte[] data) {
+                frames[0] = 0;
+                parser.reset();
+                // chunks of the size returned by a serial port
+                for (int offset = 0; offset < data.length; offset += 64) {
+                    parser.feed(data, offset, Math.min(64, data.length - offset));
+                }
+                return frames[0];
+            }
+        } };
+        for (int c = 0; c < cases.length; c++) {
+            long recovered = cases[c].run(data);
+            // warm up then measure
+            measure(cases[c], data, seconds * 1000 / 2);
+            double rate = measure(cases[c], data, seconds * 1000);
+            System.out.println(names[c] + " : " + recovered + " frames recovered of " + intact.size() + " intact, "
+                               + (long) (rate * recovered) + " frames/s, " + (long) (rate * data.length / 1000000) + " MB/s");
+        }
+        System.out.println(sink == 0 ? "" : "done");
+    }
+
+    /**
+     * @return number of streams parsed by second
+     */
+    private static double measure(Case c, byte[] data, long millis) throws IOException {
+        long count = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000;
+        long now;
+        do {
+            sink += c.run(data);
+            count++;
+            now = System.nanoTime();
+        } while (now < end);
+        return count * 1e9 / (now - start);
+    }
+
+}
@@ -0,0 +1,386 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.test.MAVLinkFrameParserTest.java
+ *
+ * ====================================================================
+ * Licence: ${licence}
+ * ====================================================================
+ */
+
+package org.mavlink.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mavlink.IMAVLinkFrameListener;
+import org.mavlink.IMAVLinkMessage;
+import org.mavlink.MAVLinkCRC;
+import org.mavlink.MAVLinkFrameParser;
+import org.mavlink.MAVLinkStatistics;
+import org.mavlink.MAVLinkSubscription;
+
+/**
+ * Parse frames fed in chunks of random sizes
+ * @version $Rev$
+ *
+ */
+public class MAVLinkFrameParserTest {
+
+    static final int[] IDS = { 0, 1, 30, 200, 255, 300, 42000 };
+
+    static final char[] CRCS = { 50, 124, 39, 7, 0, 91, 222 };
+
+    /**
+     * Keep a copy of each frame received
+     */
+    static class Frames implements IMAVLinkFrameListener {
+        List<byte[]> frames = new ArrayList<byte[]>();
+
+        public void onFrame(byte[] buffer, int offset, int length) {
+            frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+        }
+    }
+
+    /**
+     * Build a frame of a message id of IDS
+     */
+    static byte[] frame(Random random, boolean v2, int index, boolean signed) {
+        return frame(random, v2, index, signed, random.nextInt(256));
+    }
+
+    /**
+     * Build a frame of a message id of IDS sent by a system
+     */
+    static byte[] frame(Random random, boolean v2, int index, boolean signed, int sysId) {
+        int len = 1 + random.nextInt(v2 ? 255 : 100);
+        int headerLen = v2 ? 10 : 6;
+        byte[] frame = new byte[headerLen + len + 2 + (signed ? IMAVLinkMessage.SIGNATURE_LEN : 0)];
+        random.nextBytes(frame);
+        int id = IDS[index];
+        frame[0] = v2 ? IMAVLinkMessage.MAVPROT_PACKET_START_V20 : IMAVLinkMessage.MAVPROT_PACKET_START_V10;
+        frame[1] = (byte) len;
+        frame[v2 ? 5 : 3] = (byte) sysId;
+        if (v2) {
+            frame[2] = (byte) (signed ? IMAVLinkMessage.MAVLINK_IFLAG_SIGNED : 0);
+            frame[7] = (byte) id;
+            frame[8] = (byte) (id >> 8);
+            frame[9] = (byte) (id >> 16);
+        }
+        else {
+            frame[5] = (byte) id;
+        }
+        seal(frame, index);
+        return frame;
+    }
+
+    /**
+     * Write the crc of a frame of a message id of IDS
+     */
+    static void seal(byte[] frame, int index) {
+        int len = frame[1] & 0x00FF;
+        int headerLen = frame[0] == IMAVLinkMessage.MAVPROT_PACKET_START_V20 ? 10 : 6;
+        int crc = MAVLinkCRC.crc_accumulate(frame, 1, headerLen - 1 + len, MAVLinkCRC.crc_init());
+        crc = MAVLinkCRC.crc_accumulate((byte) CRCS[index], crc);
+        frame[headerLen + len] = (byte) crc;
+        frame[headerLen + len + 1] = (byte) (crc >> 8);
+    }
+
+    /**
+     * Random garbage without start bytes
+     */
+    static byte[] noise(Random random, int length) {
+        byte[] noise = new byte[length];
+        random.nextBytes(noise);
+        for (int i = 0; i < length; i++) {
+            if (noise[i] == IMAVLinkMessage.MAVPROT_PACKET_START_V10 || noise[i] == IMAVLinkMessage.MAVPROT_PACKET_START_V20) {
+                noise[i] = 0;
+            }
+        }
+        return noise;
+    }
+
+    /**
+     * Build a noisy stream : frames separated by random noise, some truncated, some with a bit flipped
+     * @param random random generator
+     * @param nbFrames number of frames
+     * @param intact receives the frames which are not damaged, in stream order
+     * @return the stream
+     */
+    static byte[] fuzz(Random random, int nbFrames, List<byte[]> intact) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < nbFrames; i++) {
+            boolean v2 = random.nextBoolean();
+            byte[] frame = frame(random, v2, v2 ? random.nextInt(IDS.length) : random.nextInt(5), v2 && random.nextInt(4) == 0);
+            // the signature and the signed flag are not checked by the parser : damages are in the bytes covered by the crc
+            int crcEnd = (v2 ? 10 : 6) + (frame[1] & 0x00FF) + 2;
+            int damage = random.nextInt(10);
+            if (damage == 0) {
+                // truncated frame
+                stream.write(frame, 0, random.nextInt(crcEnd));
+            }
+            else if (damage == 1) {
+                // one bit flipped
+                int flipped = 1 + random.nextInt(crcEnd - 1);
+                if (v2 && flipped == 2) {
+                    flipped = 1;
+                }
+                frame[flipped] ^= 1 << random.nextInt(8);
+                stream.write(frame, 0, frame.length);
+            }
+            else {
+                if (damage == 2) {
+                    // noise with start bytes
+                    byte[] garbage = new byte[random.nextInt(30)];
+                    random.nextBytes(garbage);
+                    stream.write(garbage, 0, garbage.length);
+                }
+                stream.write(frame, 0, frame.length);
+                intact.add(frame);
+            }
+        }
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void testStartBytePositions() {
+        Random random = new Random(4);
+        for (int noise = 0; noise < 24; noise++) {
+            Frames frames = new Frames();
+            MAVLinkFrameParser parser = new MAVLinkFrameParser(IDS, CRCS, frames);
+            byte[] frame = frame(random, noise % 2 == 0, 2, false);
+            byte[] data = new byte[noise + frame.length];
+            // bytes near the start bytes
+            for (int i = 0; i < noise; i++) {
+                data[i] = (byte) (0xFC + 3 * (i % 2));
+            }
+            System.arraycopy(frame, 0, data, noise, frame.length);
+            parser.feed(data, 0, data.length);
+            assertEquals(1, frames.frames.size());
+            assertEquals(noise, parser.getLostBytes());
+        }
+    }
+
+    @Test
+    public void testFuzz() {
+        Random random = new Random(5);
+        List<byte[]> intact = new ArrayList<byte[]>();
+        byte[] data = fuzz(random, 5000, intact);
+        Frames frames = new Frames();
+        MAVLinkFrameParser parser = new MAVLinkFrameParser(IDS, CRCS, frames);
+        for (int offset = 0; offset < data.length;) {
+            int n = Math.min(data.length - offset, 1 + random.nextInt(100));
+            parser.feed(data, offset, n);
+            offset += n;
+        }
+        parser.feed(new byte[MAVLinkFrameParser.MAX_FRAME_LEN], 0, MAVLinkFrameParser.MAX_FRAME_LEN);
+        // every intact frame is recovered, in order, whatever the damaged frames before it
+        int found = 0;
+        for (byte[] frame : frames.frames) {
+            if (found < intact.size() && Arrays.equals(intact.get(found), frame)) {
+                found++;
+            }
+        }
+        assertEquals(intact.size(), found);
+        assertTrue(parser.getBadCRC() > 0);
+    }
+
+    @Test
+    public void testChunks() {
+        Random random = new Random(1);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        List<byte[]> sent = new ArrayList<byte[]>();
+        int noise = 0;
+        for (int i = 0; i < 2000; i++) {
+            boolean v2 = random.nextBoolean();
+            byte[] frame = frame(random, v2, v2 ? random.nextInt(IDS.length) : random.nextInt(5), v2 && random.nextInt(4) == 0);
+            sent.add(frame);
+            stream.write(frame, 0, frame.length);
+            if (random.nextInt(5) == 0) {
+                byte[] garbage = noise(random, random.nextInt(20));
+                stream.write(garbage, 0, garbage.length);
+                noise += garbage.length;
+            }
+        }
+        byte[] data = stream.toByteArray();
+        Frames frames = new Frames();
+        MAVLinkFrameParser parser = new MAVLinkFrameParser(IDS, CRCS, frames);
+        for (int offset = 0; offset < data.length;) {
+            int n = Math.min(data.length - offset, 1 + random.nextInt(600));
+            if (random.nextBoolean()) {
+                parser.feed(data, offset, n);
+            }
+            else {
+                ByteBuffer direct = ByteBuffer.allocateDirect(n);
+                direct.put(data, offset, n);
+                direct.flip();
+                parser.feed(direct);
+            }
+            offset += n;
+        }
+        assertEquals(sent.size(), frames.frames.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertTrue(Arrays.equals(sent.get(i), frames.frames.get(i)));
+        }
+        assertEquals(sent.size(), parser.getNbMessagesReceived());
+        assertEquals(noise, parser.getLostBytes());
+        assertEquals(data.length, parser.getTotalBytesReceived());
+    }
+
+    @Test
+    public void testBadFrames() {
+        Random random = new Random(2);
+        Frames frames = new Frames();
+        MAVLinkFrameParser parser = new MAVLinkFrameParser(CRCS, frames);
+        byte[] good = frame(random, false, 1, false);
+        byte[] bad = frame(random, false, 2, false);
+        bad[7] ^= 0x10;
+        // message id 3 is not known
+        byte[] unknown = frame(random, false, 1, false);
+        unknown[5] = 10;
+        parser.feed(bad, 0, bad.length);
+        parser.feed(unknown, 0, unknown.length);
+        parser.feed(good, 0, good.length);
+        // a start byte inside the rejected frames may still wait for bytes covering the good frame
+        parser.feed(new byte[MAVLinkFrameParser.MAX_FRAME_LEN], 0, MAVLinkFrameParser.MAX_FRAME_LEN);
+        assertEquals(1, frames.frames.size());
+        assertTrue(Arrays.equals(good, frames.frames.get(0)));
+        assertTrue(parser.getBadCRC() >= 2);
+        // MAVLink 1 id 1 of the frame is the 2nd entry of the table
+        assertEquals(1, MAVLinkFrameParser.getMessageId(frames.frames.get(0), 0));
+    }
+
+    @Test
+    public void testSubscription() {
+        Random random = new Random(6);
+        List<byte[]> sent = new ArrayList<byte[]>();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; i++) {
+            byte[] frame = frame(random, true, random.nextInt(IDS.length), false, i % 2);
+            sent.add(frame);
+            stream.write(frame, 0, frame.length);
+        }
+        byte[] data = stream.toByteArray();
+        for (boolean check : new boolean[] { true, false }) {
+            Frames frames = new Frames();
+            MAVLinkFrameParser parser = new MAVLinkFrameParser(IDS, CRCS, frames);
+            MAVLinkSubscription subscription = new MAVLinkSubscription(IDS[IDS.length - 1]);
+            subscription.subscribe(IDS[1]);
+            subscription.subscribe(IDS[6]);
+            subscription.setSource(1, MAVLinkSubscription.ANY);
+            parser.setSubscription(subscription);
+            parser.setCheckSkippedCRC(check);
+            parser.feed(data, 0, data.length / 2);
+            // change the subscription while parsing
+            subscription.unsubscribe(IDS[6]);
+            subscription.setSource(MAVLinkSubscription.ANY, MAVLinkSubscription.ANY);
+            parser.feed(data, data.length / 2, data.length - data.length / 2);
+            for (byte[] frame : frames.frames) {
+                int msgid = MAVLinkFrameParser.getMessageId(frame, 0);
+                assertTrue(msgid == IDS[1] || msgid == IDS[6]);
+            }
+            int expected = 0;
+            int position = 0;
+            for (byte[] frame : sent) {
+                int msgid = MAVLinkFrameParser.getMessageId(frame, 0);
+                boolean first = position + frame.length <= data.length / 2;
+                if (first ? (msgid == IDS[1] || msgid == IDS[6]) && frame[5] == 1 : msgid == IDS[1]) {
+                    expected++;
+                }
+                position += frame.length;
+            }
+            assertEquals(expected, frames.frames.size());
+            assertEquals(sent.size() - expected, parser.getNbMessagesSkipped());
+            assertEquals(0, parser.getBadCRC());
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        Random random = new Random(7);
+        MAVLinkFrameParser parser = new MAVLinkFrameParser(IDS, CRCS, new Frames());
+        MAVLinkStatistics statistics = new MAVLinkStatistics(true);
+        parser.setStatistics(statistics);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        long now = 1000000000L;
+        int bytes = 0;
+        int sequence = 0;
+        for (int i = 0; i < 100; i++) {
+            byte[] frame = frame(random, false, 1, false, 3);
+            // component 4 sends every sequence but 10 to 14
+            sequence = i < 10 ? i : i + 5;
+            frame[2] = (byte) sequence;
+            frame[4] = 4;
+            seal(frame, 1);
+            bytes += frame.length;
+            if (i < 50) {
+                // one chunk by millisecond
+                parser.feed(frame, 0, frame.length, now);
+                now += 1000000L;
+            }
+            else {
+                stream.write(frame, 0, frame.length);
+            }
+        }
+        byte[] bad = frame(random, true, 6, false, 3);
+        bad[6] = 4;
+        bad[10] ^= 1;
+        stream.write(bad, 0, bad.length);
+        // a corrupted frame of an unknown stream does not create its counters
+        byte[] noise = frame(random, true, 6, false, 9);
+        noise[6] = 1;
+        noise[10] ^= 1;
+        stream.write(noise, 0, noise.length);
+        // frames of the last chunk share its time
+        byte[] data = stream.toByteArray();
+        parser.feed(data, 0, data.length, now);
+        assertEquals(100, statistics.getMessage(IDS[1]).getMessages());
+        assertEquals(bytes, statistics.getMessage(IDS[1]).getBytes());
+        assertEquals(2, statistics.getMessage(IDS[6]).getCrcFailures());
+        assertEquals(0, statistics.getMessage(IDS[6]).getMessages());
+        MAVLinkStatistics.Counters counters = statistics.getStream(3, 4);
+        assertEquals(100, counters.getMessages());
+        assertEquals(5, counters.getSequenceGaps());
+        assertEquals(1, counters.getCrcFailures());
+        long intervals = 0;
+        for (long n : counters.getIntervalHistogram()) {
+            intervals += n;
+        }
+        assertEquals(50, intervals);
+        assertEquals(50, counters.getIntervalHistogram()[10]);
+        assertEquals(100, statistics.getTotal().getMessages());
+        assertTrue(statistics.getStream(3, 5) == null);
+        assertTrue(statistics.getStream(9, 1) == null);
+        assertEquals(2, statistics.getTotal().getCrcFailures());
+    }
+
+    @Test
+    public void testFrameInsideGarbage() {
+        Random random = new Random(3);
+        Frames frames = new Frames();
+        MAVLinkFrameParser parser = new MAVLinkFrameParser(IDS, CRCS, frames);
+        byte[] frame = frame(random, true, 6, false);
+        // a false start byte announcing a long frame hides the real frame
+        byte[] data = new byte[3 + frame.length + 300];
+        data[0] = IMAVLinkMessage.MAVPROT_PACKET_START_V10;
+        data[1] = (byte) 200;
+        System.arraycopy(frame, 0, data, 3, frame.length);
+        parser.feed(data, 0, data.length);
+        assertEquals(1, frames.frames.size());
+        assertTrue(Arrays.equals(frame, frames.frames.get(0)));
+        assertEquals(42000, MAVLinkFrameParser.getMessageId(frames.frames.get(0), 0));
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.test.MAVLinkSigningBenchmark.java
+ *
+ * ====================================================================
+ * Licence: ${licence}
+ * ====================================================================
+ */
+
+package org.mavlink.test;
+
+import java.util.Random;
+
+import org.mavlink.MAVLinkSigning;
+
+/**
+ * Signed and verified frames by second on one thread, for usual payload sizes.
+ * Run with java org.mavlink.test.MAVLinkSigningBenchmark [seconds by case].
+ * @version $Rev$
+ *
+ */
+public class MAVLinkSigningBenchmark {
+
+    private static final int[] SIZES = { 9, 28, 255 };
+
+    public static void main(String[] args) {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 2;
+        byte[] key = MAVLinkSigningTest.key(1);
+        for (int size : SIZES) {
+            MAVLinkSigning sender = new MAVLinkSigning();
+            MAVLinkSigning receiver = new MAVLinkSigning();
+            sender.setKey(0, key);
+            receiver.setKey(0, key);
+            byte[] frame = MAVLinkSigningTest.frame(new Random(size), 0, size, 1, 1);
+            // warm up then measure
+            run(sender, receiver, frame, seconds * 1000 / 2);
+            long[] counts = run(sender, receiver, frame, seconds * 1000);
+            System.out.println(size + " bytes : " + counts[0] / seconds + " frames/s signed and verified, " + counts[1] + " rejected");
+        }
+    }
+
+    /**
+     * @return frames signed then verified and frames rejected
+     */
+    private static long[] run(MAVLinkSigning sender, MAVLinkSigning receiver, byte[] frame, long millis) {
+        long count = 0, rejected = 0;
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < 1000; i++) {
+                sender.sign(frame, 0, 0);
+                if (!receiver.verify(frame, 0)) {
+                    rejected++;
+                }
+            }
+            count += 1000;
+        }
+        return new long[] { count, rejected };
+    }
+
+}
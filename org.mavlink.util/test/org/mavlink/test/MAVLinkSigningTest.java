@@ -0,0 +1,138 @@
+/**
+ * $Id$
+ * $Date$
+ *
+ * ======================================================
+ * Project : MAVLINK Java
+ * Module : org.mavlink.util
+ * File : org.mavlink.test.MAVLinkSigningTest.java
+ *
+ * ====================================================================
+ * Licence: ${licence}
+ * ====================================================================
+ */
+
+package org.mavlink.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mavlink.IMAVLinkMessage;
+import org.mavlink.MAVLinkSigning;
+
+/**
+ * Check signatures against the SHA-256 of the JDK and the replay protection
+ * @version $Rev$
+ *
+ */
+public class MAVLinkSigningTest {
+
+    static byte[] key(int seed) {
+        byte[] key = new byte[32];
+        new Random(seed).nextBytes(key);
+        return key;
+    }
+
+    /**
+     * Build a MAVLink 2 frame with signed flag and random payload at offset in a buffer large enough for the signature
+     */
+    static byte[] frame(Random random, int offset, int len, int sysId, int compId) {
+        byte[] buffer = new byte[offset + 12 + len + IMAVLinkMessage.SIGNATURE_LEN + 5];
+        random.nextBytes(buffer);
+        buffer[offset] = IMAVLinkMessage.MAVPROT_PACKET_START_V20;
+        buffer[offset + 1] = (byte) len;
+        buffer[offset + 2] = IMAVLinkMessage.MAVLINK_IFLAG_SIGNED;
+        buffer[offset + 5] = (byte) sysId;
+        buffer[offset + 6] = (byte) compId;
+        return buffer;
+    }
+
+    @Test
+    public void testSignature() throws Exception {
+        Random random = new Random(1);
+        MAVLinkSigning signing = new MAVLinkSigning();
+        signing.setKey(3, key(3));
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        for (int len = 1; len <= 255; len++) {
+            byte[] buffer = frame(random, 7, len, 1, 1);
+            int n = signing.sign(buffer, 7, 3);
+            assertEquals(12 + len + IMAVLinkMessage.SIGNATURE_LEN, n);
+            sha.reset();
+            sha.update(key(3));
+            sha.update(buffer, 7, n - 6);
+            byte[] expected = sha.digest();
+            for (int i = 0; i < 6; i++) {
+                assertEquals(expected[i], buffer[7 + n - 6 + i]);
+            }
+            assertEquals(3, buffer[7 + 12 + len]);
+        }
+    }
+
+    @Test
+    public void testVerify() {
+        Random random = new Random(2);
+        MAVLinkSigning sender = new MAVLinkSigning();
+        MAVLinkSigning receiver = new MAVLinkSigning();
+        sender.setKey(0, key(5));
+        receiver.setKey(0, key(5));
+        byte[] first = frame(random, 0, 20, 1, 1);
+        sender.sign(first, 0, 0);
+        byte[] second = frame(random, 0, 30, 1, 1);
+        sender.sign(second, 0, 0);
+        assertTrue(receiver.verify(first, 0));
+        // replayed
+        assertFalse(receiver.verify(first, 0));
+        assertTrue(receiver.verify(second, 0));
+        assertFalse(receiver.verify(first, 0));
+        // tampered
+        byte[] third = frame(random, 0, 30, 1, 1);
+        sender.sign(third, 0, 0);
+        third[15]++;
+        assertFalse(receiver.verify(third, 0));
+        // other stream has its own timestamps
+        byte[] other = frame(random, 0, 10, 2, 1);
+        sender.sign(other, 0, 0);
+        assertTrue(receiver.verify(other, 0));
+        // unknown key
+        MAVLinkSigning stranger = new MAVLinkSigning();
+        stranger.setKey(0, key(6));
+        byte[] forged = frame(random, 0, 10, 1, 1);
+        stranger.sign(forged, 0, 0);
+        assertFalse(receiver.verify(forged, 0));
+        // no key for link
+        receiver.removeKey(0);
+        byte[] fourth = frame(random, 0, 10, 1, 1);
+        sender.sign(fourth, 0, 0);
+        assertFalse(receiver.verify(fourth, 0));
+    }
+
+    @Test
+    public void testOldTimestamp() throws Exception {
+        Random random = new Random(3);
+        MAVLinkSigning receiver = new MAVLinkSigning();
+        receiver.setKey(1, key(7));
+        // new stream signed 2 minutes ago
+        byte[] frame = frame(random, 0, 10, 1, 1);
+        long timestamp = MAVLinkSigning.timestampNow() - 2 * MAVLinkSigning.REPLAY_WINDOW;
+        frame[22] = 1;
+        for (int i = 0; i < 6; i++) {
+            frame[23 + i] = (byte) (timestamp >>> (8 * i));
+        }
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        sha.update(key(7));
+        sha.update(frame, 0, 29);
+        System.arraycopy(sha.digest(), 0, frame, 29, 6);
+        assertFalse(receiver.verify(frame, 0));
+        // same frame signed now is accepted
+        MAVLinkSigning sender = new MAVLinkSigning();
+        sender.setKey(1, key(7));
+        sender.sign(frame, 0, 1);
+        assertTrue(receiver.verify(frame, 0));
+    }
+
+}